@@ -13,6 +13,8 @@ public class AgentMap<T>
     private final Map<Integer, Integer> _indices;
     /** Array of agent references indexed internally. */
     private Object[] _agents;
+    /** Array of agents' global ids indexed internally. */
+    private final int[] _ids;
     /** Number of agents currently registered. */
     private int _agentCount;
 
@@ -20,6 +22,7 @@ public class AgentMap<T>
     {
         _indices = new HashMap<>();
         _agents = new Object[maxAgentCount];
+        _ids = new int[maxAgentCount];
         _agentCount = 0;
     }
 
@@ -55,6 +58,16 @@ public class AgentMap<T>
         return _indices.getOrDefault(id,-1);
     }
 
+    /**
+     * Get global id by internal index.
+     * @param i internal index
+     * @return  agent global id
+     */
+    public int getId(int i)
+    {
+        return _ids[i];
+    }
+
     /**
      * Register new agent in the map.
      * Does not perform a check for registering more agents than it should.
@@ -65,6 +78,7 @@ public class AgentMap<T>
     {
         _indices.put(globalId, _agentCount);
         _agents[_agentCount] = agentRef;
+        _ids[_agentCount] = globalId;
         ++_agentCount;
     }
 
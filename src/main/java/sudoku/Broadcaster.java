@@ -0,0 +1,67 @@
+package sudoku;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Agent forwarding every received message to all its recipients.
+ * It speaks the protocol of the recipients, so it can be used as their common reference:
+ * the sender pays for a single message, and the fan-out happens in the Broadcaster's own mailbox turn.
+ * Messages are shared between recipients, thus they must be immutable.
+ * A child of the Teacher agent.
+ * @param <T>	protocol of the recipients
+ */
+public class Broadcaster<T> extends AbstractBehavior<T>
+{
+	/** Recipients of broadcast messages. */
+	private final List<ActorRef<T>> _recipients;
+
+	/**
+	 * Public method that calls private constructor.
+	 * Existence required by Akka.
+	 * @param recipients	recipients of broadcast messages (copied)
+	 * @return 		wrapped Behavior
+	 */
+	public static <T> Behavior<T> create(List<ActorRef<T>> recipients)
+	{
+		return Behaviors.setup(context -> new Broadcaster<>(context, recipients));
+	}
+
+	private Broadcaster(ActorContext<T> context, List<ActorRef<T>> recipients)
+	{
+		super(context);
+		_recipients = new ArrayList<>(recipients);
+	}
+
+	/**
+	 * Main method controlling incoming messages.
+	 * Existence required by Akka.
+	 * @return 		wrapped Behavior
+	 */
+	@Override
+	public Receive<T> createReceive()
+	{
+		return newReceiveBuilder()
+				.onAnyMessage(this::onBroadcast)
+				.build();
+	}
+
+	/**
+	 * Forwards the message to all recipients.
+	 * @param msg	message to be broadcast
+	 * @return 		wrapped Behavior
+	 */
+	private Behavior<T> onBroadcast(T msg)
+	{
+		for (int i = 0, n = _recipients.size(); i < n; ++i)
+			_recipients.get(i).tell(msg);
+		return this;
+	}
+}
@@ -0,0 +1,69 @@
+package sudoku;
+
+import akka.actor.typed.ActorSystem;
+import akka.actor.typed.DispatcherSelector;
+import akka.actor.typed.Props;
+import com.typesafe.config.Config;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatchers the agents are spawned on, selected by the "sudoku.dispatcher-layout" setting (see application.conf).
+ * With the "bulkhead" layout, control agents (Supervisor, Teachers, TimerManagers) do not queue behind the negotiation
+ * traffic of Players and Tables, and the solution journal blocks on the disk on its own threads.
+ * With the "default" layout, or without the settings (e.g. in tests), all agents run on Akka's default dispatcher.
+ */
+public final class DispatcherLayout
+{
+	/** Path of the setting selecting the layout. */
+	public static final String LAYOUT_PATH = "sudoku.dispatcher-layout";
+	/** Value of the setting selecting separate dispatchers. */
+	public static final String BULKHEAD_LAYOUT = "bulkhead";
+	/** Dispatcher of control agents. */
+	public static final String CONTROL_DISPATCHER = "sudoku.control-dispatcher";
+	/** Dispatcher of negotiating agents. */
+	public static final String NEGOTIATION_DISPATCHER = "sudoku.negotiation-dispatcher";
+	/** Dispatcher of blocking I/O. */
+	public static final String BLOCKING_IO_DISPATCHER = "sudoku.blocking-io-dispatcher";
+
+	private DispatcherLayout() {}
+
+	/** Props of control agents - the Supervisor, Teachers and their TimerManagers. */
+	public static Props control(ActorSystem<?> system)
+	{
+		return control(system.settings().config());
+	}
+
+	/** Props of control agents, for the guardian spawned together with the ActorSystem. */
+	public static Props control(Config config)
+	{
+		return select(config, CONTROL_DISPATCHER);
+	}
+
+	/** Props of negotiating agents - Players, Tables and TableShards (and broadcasters addressing them). */
+	public static Props negotiation(ActorSystem<?> system)
+	{
+		return select(system.settings().config(), NEGOTIATION_DISPATCHER);
+	}
+
+	/** Executor allowed to block on the disk, e.g. by the solution journal. */
+	public static Executor blockingIo(ActorSystem<?> system)
+	{
+		final DispatcherSelector selector = isBulkhead(system.settings().config())
+				? DispatcherSelector.fromConfig(BLOCKING_IO_DISPATCHER)
+				: DispatcherSelector.blocking();
+		return system.dispatchers().lookup(selector);
+	}
+
+	private static Props select(Config config, String dispatcherPath)
+	{
+		return isBulkhead(config)
+				? DispatcherSelector.fromConfig(dispatcherPath)
+				: DispatcherSelector.defaultDispatcher();
+	}
+
+	private static boolean isBulkhead(Config config)
+	{
+		return config.hasPath(LAYOUT_PATH) && config.getString(LAYOUT_PATH).equals(BULKHEAD_LAYOUT);
+	}
+}
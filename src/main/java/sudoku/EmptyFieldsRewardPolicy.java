@@ -0,0 +1,62 @@
+package sudoku;
+
+import java.util.Arrays;
+
+/**
+ * Default RewardPolicy: every Player is punished proportionally to the number of empty fields it has left.
+ * Rewards are then compensated, so that the total reward of all inputted digits is zero.
+ */
+public class EmptyFieldsRewardPolicy implements RewardPolicy
+{
+	/** Number of filled fields of each Player - reused between iterations. */
+	private int[] _filledCounts = new int[0];
+
+	@Override
+	public void computeRewards(Sudoku solution, Topology topology, float[] rewards)
+	{
+		final int sudokuSize = topology.getSize();
+		final int playerCount = topology.getPlayerCount();
+		if (_filledCounts.length != playerCount)
+			_filledCounts = new int[playerCount];
+		final int[] filledCounts = _filledCounts;
+		Arrays.fill(filledCounts, 0);
+
+		// Count filled fields for each Player - in a single pass over the board
+		int filledCount = 0; // Count of filled fields of all Players (each field is counted by its 3 Players)
+		for (int tableId = 0; tableId < topology.getTableCount(); ++tableId)
+		{
+			if (solution.getDigit(tableId) != 0)
+			{
+				++filledCounts[topology.getPlayerId(tableId, 0)];
+				++filledCounts[topology.getPlayerId(tableId, 1)];
+				++filledCounts[topology.getPlayerId(tableId, 2)];
+				filledCount += 3;
+			}
+		}
+		// Calculate rewards
+		float rewardSum = 0;
+		for (int i = 0; i < playerCount; ++i)
+		{
+			rewards[i] = getPenalty(sudokuSize - filledCounts[i], sudokuSize);
+			rewardSum += rewards[i] * filledCounts[i];
+		}
+		// Normalize rewards
+		final float compensationFactor = (filledCount == 0) ? 0 : -rewardSum / filledCount;
+		for (int i = 0; i < playerCount; ++i)
+		{
+			rewards[i] += compensationFactor;
+		}
+	}
+
+	/**
+	 * Calculate amount of base reward granted to Player at the end of big iteration.
+	 * This reward value doesn't take reward equalization into account (the actual reward sent to Player may differ).
+	 * @param emptyFieldsCount	count of empty fields left by Player
+	 * @param sudokuSize	size of sudoku side
+	 * @return	amount of reward (should be non-positive in most cases)
+	 */
+	protected float getPenalty(int emptyFieldsCount, int sudokuSize)
+	{
+		return -emptyFieldsCount/(float)sudokuSize;
+	}
+}
@@ -0,0 +1,46 @@
+package sudoku;
+
+import akka.actor.typed.Behavior;
+import akka.actor.typed.BehaviorInterceptor;
+import akka.actor.typed.TypedActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Interceptor counting messages received by an agent. Used for measuring the cost of solving Sudoku of large ranks.
+ * Counters may be shared between many agents running in parallel.
+ * @param <T>	protocol of the agent
+ */
+public class MessageCounter<T> extends BehaviorInterceptor<T, T>
+{
+	/** Counter of received messages. */
+	private final LongAdder _counter;
+
+	private MessageCounter(Class<T> protocolClass, LongAdder counter)
+	{
+		super(protocolClass);
+		this._counter = counter;
+	}
+
+	/**
+	 * Wraps the behavior, so that its received messages are counted.
+	 * @param behavior		behavior of the agent
+	 * @param protocolClass	protocol of the agent
+	 * @param counter		counter of received messages; if null, the behavior is returned as it is
+	 * @return				wrapped Behavior
+	 */
+	public static <T> Behavior<T> count(Behavior<T> behavior, Class<T> protocolClass, LongAdder counter)
+	{
+		if (counter == null)
+			return behavior;
+		return Behaviors.intercept(() -> new MessageCounter<>(protocolClass, counter), behavior);
+	}
+
+	@Override
+	public Behavior<T> aroundReceive(TypedActorContext<T> context, T msg, ReceiveTarget<T> target)
+	{
+		_counter.increment();
+		return target.apply(context, msg);
+	}
+}
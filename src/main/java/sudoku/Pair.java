@@ -1,12 +0,0 @@
-package sudoku;
-
-public class Pair<T1, T2>
-{
-    public T1 first;
-    public T2 second;
-    Pair(T1 fst, T2 snd)
-    {
-        this.first = fst;
-        this.second = snd;
-    }
-}
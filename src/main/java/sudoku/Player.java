@@ -7,8 +7,9 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.StashBuffer;
 
-import java.util.HashMap;
+import java.util.Arrays;
 
 /**
  * Playing agent, who actually learns to solve Sudoku.
@@ -145,39 +146,48 @@ public class Player extends AbstractBehavior<Player.Protocol>
 		}
 	}
 
-	/** Message commanding the agent to reset it's memory due to start of new iteration. */
-	public static class ResetMemoryMsg implements Protocol, SharedProtocols.NewIterationProtocol
+	/** ID of the iteration a Player is in at the moment, whatever it is. */
+	public static final int PRESENT_ITERATION_ID = 0;
+
+	/**
+	 * Message allowing the agent to start new iteration by sending new offers.
+	 * If the iteration is new to the Player, it resets its memory first - hard for a new big iteration, softly otherwise.
+	 */
+	public static class ConsentToStartIterationMsg implements Protocol, SharedProtocols.NewIterationProtocol
 	{
-		public final ActorRef<Teacher.Protocol> _replyTo;
-		public ResetMemoryMsg(ActorRef<Teacher.Protocol> replyTo)
+		public final int _iterationId;
+		public final boolean _isNewBigIteration;
+		/** Consent to start the present iteration, with no reset of the memory. */
+		public ConsentToStartIterationMsg()
 		{
-			this._replyTo = replyTo;
+			this(PRESENT_ITERATION_ID, false);
 		}
-	}
-
-	/** Message commanding the agent to reset it's memory softly due to start of new mini-iteration. */
-	public static class ResetMemorySoftlyMsg implements Protocol, SharedProtocols.NewIterationProtocol
-	{
-		public final ActorRef<Teacher.Protocol> _replyTo;
-		public ResetMemorySoftlyMsg(ActorRef<Teacher.Protocol> replyTo)
+		public ConsentToStartIterationMsg(int iterationId, boolean isNewBigIteration)
 		{
-			this._replyTo = replyTo;
+			this._iterationId = iterationId;
+			this._isNewBigIteration = isNewBigIteration;
 		}
 	}
 
-	/** Message allowing the agent to start new iteration by sending new offers. */
-	public static class ConsentToStartIterationMsg implements Protocol, SharedProtocols.NewIterationProtocol
-	{}
-
-	/** Message from the Teacher granting the Player reward (or punishment if negative) for its choices. */
+	/**
+	 * Message from the Teacher granting the Player reward (or punishment if negative) for its choices.
+	 * If it carries ID of a new iteration, it also allows the Player to start it - as a new big iteration.
+	 */
 	public static class GrantRewardMsg implements Protocol, SharedProtocols.AssessmentProtocol
 	{
 		public final float _rewardValue;
 		public final ActorRef<Teacher.Protocol> _replyTo;
+		public final int _iterationId;
+		/** Reward only, with no start of a new iteration. */
 		public GrantRewardMsg(float rewardValue, ActorRef<Teacher.Protocol> replyTo)
+		{
+			this(rewardValue, replyTo, PRESENT_ITERATION_ID);
+		}
+		public GrantRewardMsg(float rewardValue, ActorRef<Teacher.Protocol> replyTo, int iterationId)
 		{
 			this._rewardValue = rewardValue;
 			this._replyTo = replyTo;
+			this._iterationId = iterationId;
 		}
 	}
 
@@ -259,6 +269,11 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	private final AgentMap<ActorRef<Table.Protocol>> _tables;
 	/** Reference to Player's parent - the Teacher */
 	private final ActorRef<Teacher.Protocol> _parent;
+	/** Negotiations messages of an iteration the Player was not allowed to start yet. */
+	private final StashBuffer<Protocol> _stash;
+
+	/** Capacity of the stash per a Table - a Table sends at most one message before the Player's first offer. */
+	private static final int STASH_CAPACITY_PER_TABLE = 2;
 
 	/**
 	 * Public method that calls private constructor.
@@ -268,16 +283,19 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	 */
 	public static Behavior<Player.Protocol> create(CreateMsg createMsg)
 	{
-		return Behaviors.setup(context -> new Player(context, createMsg));
+		return Behaviors.withStash(
+				STASH_CAPACITY_PER_TABLE * createMsg._sudokuSize,
+				stash -> Behaviors.setup(context -> new Player(context, createMsg, stash)));
 	}
 
-	private Player(ActorContext<Protocol> context, CreateMsg createMsg)
+	private Player(ActorContext<Protocol> context, CreateMsg createMsg, StashBuffer<Protocol> stash)
 	{
 		super(context);
 		_playerId = createMsg._playerId;
 		_memory = new PlayerMemory(createMsg._sudokuSize);
 		_tables = new AgentMap<ActorRef<Table.Protocol>>(createMsg._sudokuSize);
 		_parent = createMsg._replyTo;
+		_stash = stash;
 		// context.getLog().info("Player {} created", _tableId);		// left for debugging only
 	}
 
@@ -296,9 +314,7 @@ public class Player extends AbstractBehavior<Player.Protocol>
 				.onMessage(RejectOfferMsg.class, this::onRejectOffer)
 				.onMessage(NegotiationsPositiveMsg.class, this::onNegotiationsPositive)
 				.onMessage(NegotiationsFinishedMsg.class, this::onNegotiationsFinished)
-				.onMessage(ResetMemoryMsg.class, this::onResetMemory)
 				.onMessage(ConsentToStartIterationMsg.class, this::onConsentToStartIteration)
-				.onMessage(ResetMemorySoftlyMsg.class, this::onResetMemorySoftly)
 				.onMessage(GrantRewardMsg.class, this::onGrantReward)
 				.onMessage(WakeUpMsg.class, this::onWakeUp)
 				.onSignal(PostStop.class, signal -> onPostStop())
@@ -343,9 +359,10 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	 */
 	private Behavior<Protocol> onMemorisedDigitsRequest(MemorisedDigitsRequestMsg msg)
 	{
-		int localIndex, digit;
-		boolean mask;
-		Teacher.MemorisedDigitsMsg replyMsg = new Teacher.MemorisedDigitsMsg(new HashMap<>(), _playerId);
+		int localIndex, count = 0;
+		int[] tableIds = new int[msg._tableIds.length];
+		int[] digits = new int[msg._tableIds.length];
+		final long[] masks = new long[(msg._tableIds.length + 63) >>> 6];
 
 		for(int globalId : msg._tableIds)
 		{
@@ -353,15 +370,36 @@ public class Player extends AbstractBehavior<Player.Protocol>
 			if(localIndex < 0)
 				continue;
 
-			digit = _memory.getDigit(localIndex);
-			mask = _memory.getMask(localIndex);
-			replyMsg._memorisedDigits.put(globalId, new Pair<>(digit, mask));
+			tableIds[count] = globalId;
+			digits[count] = _memory.getDigit(localIndex);
+			if(_memory.getMask(localIndex))
+				masks[count >>> 6] |= 1L << count;
+			++count;
+		}
+		if(count < tableIds.length)		// some of requested Tables are not registered to this Player
+		{
+			tableIds = Arrays.copyOf(tableIds, count);
+			digits = Arrays.copyOf(digits, count);
 		}
-		msg._replyTo.tell(replyMsg);
+		msg._replyTo.tell(new Teacher.MemorisedDigitsMsg(tableIds, digits, masks, _playerId));
 
 		return this;
 	}
 
+	/**
+	 * A Table may start negotiations of a new iteration before the Player gets ConsentToStartIterationMsg of it.
+	 * Such messages are stashed, and handled right after the consent.
+	 * @param msg	message from a Table
+	 * @return		true if the message was stashed
+	 */
+	private boolean stashIfAhead(NegotiationsMsg msg)
+	{
+		if (msg._iterationId <= _memory.getIterationId())
+			return false;
+		_stash.stash(msg);
+		return true;
+	}
+
 	/**
 	 * Weighs given offer(s) for given digits.
 	 * During negotiations, Player will be asked for weighing other Players' offers. This is the action for that.
@@ -371,6 +409,8 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	 */
 	private Behavior<Protocol> onAdditionalInfoRequest(AdditionalInfoRequestMsg msg) // specify
 	{
+		if (stashIfAhead(msg))
+			return this;
 		final int tableIndex = _tables.getIndex(msg._tableId);
 		if (_memory.isFinished(tableIndex, msg._iterationId))
 			return this;
@@ -392,7 +432,8 @@ public class Player extends AbstractBehavior<Player.Protocol>
 						collisions,
 						getContext().getSelf(),
 						_playerId,
-						_memory.getIterationId())
+						_memory.getIterationId(),
+						msg._tableId)
 		);
 
 		return this;
@@ -401,36 +442,31 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	/**
 	 * Send offer message to a Table.
 	 * Method tries to choose the best offer possible (with the highest weight) for this specific Table.
+	 * Digits rejected before are not tested again (see PlayerMemory.getBestDigit()).
 	 * @param tableIndex	internal index of Table, to which the message is going to be sent
 	 */
 	private void sendBestOffer(int tableIndex)
 	{
-		final int sudokuSize = _memory.getSudokuSize();
-		boolean offerSent = false;
-		for (int p = 0; p < sudokuSize; ++p)
+		final int digit = _memory.getBestDigit(tableIndex);
+		if (digit != 0) // If some digit doesn't collide
 		{
-			final int digit = _memory.getDigitPriority(tableIndex, p);
-			if (!_memory.getCollision(tableIndex, digit)) // If the digit doesn't collide
-			{
-				_memory.setDigit(tableIndex, digit);
-				final ActorRef<Table.Protocol> tempTableRef = _tables.getAgent(tableIndex);
-				tempTableRef.tell(new Table.OfferMsg(
-						digit,
-						_memory.getAward(tableIndex, digit),
-						getContext().getSelf(),
-						_playerId,
-						_memory.getIterationId()));
-				offerSent = true;
-				break; // Do not send any more offers to this Table
-			}
+			_memory.setDigit(tableIndex, digit);
+			final ActorRef<Table.Protocol> tempTableRef = _tables.getAgent(tableIndex);
+			tempTableRef.tell(new Table.OfferMsg(
+					digit,
+					_memory.getAward(tableIndex, digit),
+					getContext().getSelf(),
+					_playerId,
+					_memory.getIterationId(),
+					_tables.getId(tableIndex)));
 		}
-		if (!offerSent) // Couldn't offer any digit
+		else // Couldn't offer any digit
 		{
 			_memory.setDigit(tableIndex, 0);
 			final ActorRef<Table.Protocol> tempTableRef = _tables.getAgent(tableIndex);
 			// Send offer with a special value (zero)
 			tempTableRef.tell(new Table.OfferMsg(
-					0, 0L, getContext().getSelf(), _playerId, _memory.getIterationId()));
+					0, 0L, getContext().getSelf(), _playerId, _memory.getIterationId(), _tables.getId(tableIndex)));
 		}
 	}
 
@@ -442,6 +478,8 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	 */
 	private Behavior<Protocol> onRejectOffer(RejectOfferMsg msg) // cancel
 	{
+		if (stashIfAhead(msg))
+			return this;
 		final int tableIndex = _tables.getIndex(msg._tableId);
 		if (_memory.isFinished(tableIndex, msg._iterationId))
 			return this;
@@ -475,6 +513,8 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	 */
 	private Behavior<Protocol> onNegotiationsPositive(NegotiationsPositiveMsg msg) // winner
 	{
+		if (stashIfAhead(msg))
+			return this;
 		final int tableIndex = _tables.getIndex(msg._tableId);
 		if (_memory.isFinished(tableIndex, msg._iterationId))
 			return this;
@@ -489,13 +529,13 @@ public class Player extends AbstractBehavior<Player.Protocol>
 		{
 			_memory.setCollision(tableIndex, approvedDigit);
 			tableRef.tell(new Table.WithdrawOfferMsg(
-					approvedDigit, getContext().getSelf(), _playerId, _memory.getIterationId()));
+					approvedDigit, getContext().getSelf(), _playerId, _memory.getIterationId(), msg._tableId));
 		}
 		else
 		{
 			_memory.setAccepted(tableIndex, approvedDigit);
 			tableRef.tell(new Table.AcceptNegotiationsResultsMsg(
-					approvedDigit, getContext().getSelf(), _playerId, _memory.getIterationId()));
+					approvedDigit, getContext().getSelf(), _playerId, _memory.getIterationId(), msg._tableId));
 		}
 
 		return this;
@@ -509,6 +549,8 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	 */
 	private Behavior<Protocol> onNegotiationsFinished(NegotiationsFinishedMsg msg) // inserted
 	{
+		if (stashIfAhead(msg))
+			return this;
 		final int tableIndex = _tables.getIndex(msg._tableId);
 		if (_memory.isFinished(tableIndex, msg._iterationId))
 			return this;
@@ -529,37 +571,34 @@ public class Player extends AbstractBehavior<Player.Protocol>
 		return this;
 	}
 
-	/**
-	 * Player resets it's memory to get ready for new iteration.
-	 * @param msg	message from the Teacher
-	 * @return		wrapped Behavior
-	 */
-	private Behavior<Protocol> onResetMemory(ResetMemoryMsg msg)
-	{
-		_memory.hardReset();
-		msg._replyTo.tell(new Teacher.PlayerPerformedMemoryResetMsg(_playerId));
-		return this;
-	}
-
-	/**
-	 * Player resets it's memory softly to get ready for new mini-iteration.
-	 * @param msg	message from the Teacher
-	 * @return		wrapped Behavior
-	 */
-	private Behavior<Protocol> onResetMemorySoftly(ResetMemorySoftlyMsg msg)
-	{
-		_memory.softReset();
-		msg._replyTo.tell(new Teacher.PlayerPerformedMemoryResetMsg(_playerId));
-		return this;
-	}
-
 	/**
 	 * Player receives permission to start new iteration.
+	 * If the iteration is a new one, Player resets its memory first (no acknowledgement is needed by the Teacher).
 	 * It chooses the best offers it can make and sends them to appropriate tables.
+	 * Then it handles messages of this iteration which came before the permission.
+	 * A consent may come late - after a reward starting the next iteration (they are sent by different routes),
+	 * so a consent to a past iteration is ignored.
 	 * @param msg	permission from the Teacher
 	 * @return		wrapped Behavior
 	 */
 	private Behavior<Protocol> onConsentToStartIteration(ConsentToStartIterationMsg msg)
+	{
+		if (msg._iterationId != PRESENT_ITERATION_ID && msg._iterationId < _memory.getIterationId())
+			return this;
+		if (msg._iterationId > _memory.getIterationId())
+		{
+			if (msg._isNewBigIteration)
+				_memory.hardReset(msg._iterationId);
+			else
+				_memory.softReset(msg._iterationId);
+		}
+		sendAllBestOffers();
+
+		return _stash.unstashAll(this);
+	}
+
+	/** Player chooses the best offers it can make and sends them to appropriate tables. */
+	private void sendAllBestOffers()
 	{
 		_memory.prioritizeTables();
 		final int sudokuSize = _memory.getSudokuSize();
@@ -571,13 +610,13 @@ public class Player extends AbstractBehavior<Player.Protocol>
 				sendBestOffer(tableIndex);
 			}
 		}
-
-		return this;
 	}
 
 	/**
 	 * Player receives reward or punishment from the Teacher for its choices during the last iteration.
 	 * Reward has an impact on Player's future choices.
+	 * If the reward opens a new big iteration, in the very same turn Player resets hard and starts the iteration,
+	 * as on ConsentToStartIterationMsg.
 	 * @param msg	reward from the Teacher
 	 * @return		wrapped Behavior
 	 */
@@ -585,8 +624,13 @@ public class Player extends AbstractBehavior<Player.Protocol>
 	{
 		_memory.rewardCurrentDigits(msg._rewardValue);
 		msg._replyTo.tell(new Teacher.RewardReceivedMsg(_playerId));
+		if (msg._iterationId <= _memory.getIterationId())
+			return this;
 
-		return this;
+		_memory.hardReset(msg._iterationId);
+		sendAllBestOffers();
+
+		return _stash.unstashAll(this);
 	}
 
 	/**
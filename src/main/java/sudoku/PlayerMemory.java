@@ -2,14 +2,18 @@ package sudoku;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collections;
 
 public class PlayerMemory
 {
     /** Array of reward values. The first index is for field and the second for digit. */
     private final float[][] _rewards;
-    /** Array of collisions. The first index is for field and the second for digit. If true, collision occurs. */
-    private final boolean[][] _collisions;
+    /**
+     * Bitmasks of collisions, one per field. The first index is for field and the second for word of the bitmask,
+     * bit (digit-1) of the bitmask is set if the digit collides on the field.
+     */
+    private final long[][] _collisions;
+    /** Bitmask of digits colliding on every field, indexed just like rows of _collisions. */
+    private final long[] _collidingDigits;
     /** Vector of current sudoku digits */
     private final int[] _digitVector;
     /** Array of flags indicating hard-coded fields. */
@@ -18,10 +22,26 @@ public class PlayerMemory
     private final int[][] _digitPriorities;
     /** Array of Table internal indices ordered from highest to lowest priority. */
     private final int[] _tablePriorities;
+    /**
+     * Cursors into _digitPriorities, one per field - digits of higher priority collide on the field till the reset.
+     * Digits only accepted on other fields (see alreadyAccepted()) do not move the cursor, as they may be released.
+     */
+    private final int[] _priorityCursors;
+    /** Flag - did rewards change since priorities were computed. */
+    private boolean _prioritiesOutdated;
+    /** Scratch buffer of sort keys for prioritizeTables() - a weight in the higher half, an index in the lower half. */
+    private final long[] _sortKeys;
     /** Array of digits that Player accepted on a Table. Zero means the offer was not accepted. */
     private final int[] _accepted;
     /** Array of flags indicating that a Table linked to a certain field ended negotiations. */
     private final boolean[] _finished;
+    /**
+     * Number of fields taking each digit (index: digit, 0 included) - either accepted on the field,
+     * or finished with the field. Kept up to date, so that alreadyAccepted() does not scan the fields.
+     */
+    private final int[] _takenCounts;
+    /** Bitmask of digits with a non-zero _takenCounts (bit: digit, 64 digits per word). */
+    private final long[] _takenDigits;
     /** Id of current iteration. */
     private int _iterationId;
 
@@ -39,33 +59,23 @@ public class PlayerMemory
         HARD
     }
 
-    private static class WeightValuePair implements Comparable<WeightValuePair>
-    {
-        public float _weight;
-        public int _value;
-
-        public WeightValuePair(float weight, int value)
-        {
-            this._weight = weight;
-            this._value = value;
-        }
-
-        public int compareTo(WeightValuePair p)
-        {
-            return Float.compare(_weight, p._weight);
-        }
-    }
-
     public PlayerMemory(int sudokuSize)
     {
         this._rewards = new float[sudokuSize][sudokuSize];              // By default initialized to 0
-        this._collisions = new boolean[sudokuSize][sudokuSize];
+        this._collisions = new long[sudokuSize][(sudokuSize + 63) >>> 6];
+        this._collidingDigits = new long[(sudokuSize + 63) >>> 6];
         this._digitVector = new int[sudokuSize];                        // By default initialized to 0
         this._mask = new MaskState[sudokuSize];
         this._digitPriorities = new int[sudokuSize][sudokuSize];
         this._tablePriorities = new int[sudokuSize];
+        this._sortKeys = new long[sudokuSize];
+        this._prioritiesOutdated = true;
+        this._priorityCursors = new int[sudokuSize];                    // By default initialized to 0
         this._accepted = new int[sudokuSize];                           // By default initialized to 0
         this._finished = new boolean[sudokuSize];                       // By default initialized to false
+        this._takenCounts = new int[sudokuSize + 1];
+        this._takenDigits = new long[(sudokuSize + 64) >>> 6];
+        recountTakenDigits();
         this._iterationId = 0;
     }
 
@@ -73,7 +83,12 @@ public class PlayerMemory
 
     public int getAccepted(int n) {return _accepted[n];}
 
-    public void setAccepted(int n, int value) {_accepted[n] = value;}
+    public void setAccepted(int n, int value)
+    {
+        release(_accepted[n]);
+        _accepted[n] = value;
+        take(value);
+    }
 
     public boolean isFinished(int n, int iterationId)
     {
@@ -85,19 +100,57 @@ public class PlayerMemory
 
     public void finish(int n)
     {
-        _finished[n] = true;
+        if (!_finished[n])
+        {
+            _finished[n] = true;
+            take(_digitVector[n]);
+        }
     }
 
+    /**
+     * Checks if the digit is accepted on some field, or some field finished with it.
+     * @param digit	digit to be checked
+     * @return		true if the digit is already taken
+     */
     public boolean alreadyAccepted(int digit)
     {
+        return (_takenDigits[digit >>> 6] & (1L << digit)) != 0;
+    }
+
+    private void take(int digit)
+    {
+        if (_takenCounts[digit]++ == 0)
+            _takenDigits[digit >>> 6] |= 1L << digit;
+    }
+
+    private void release(int digit)
+    {
+        if (--_takenCounts[digit] == 0)
+            _takenDigits[digit >>> 6] &= ~(1L << digit);
+    }
+
+    /** Rebuilds counts of taken digits from scratch, after all the fields changed at once. */
+    private void recountTakenDigits()
+    {
+        Arrays.fill(_takenCounts, 0);
+        Arrays.fill(_takenDigits, 0L);
         for (int i = 0; i < _digitVector.length; ++i)
         {
-            if (digit == _accepted[i] || (_digitVector[i] == digit && _finished[i]))
-            {
-                return true;
-            }
+            take(_accepted[i]);
+            if (_finished[i])
+                take(_digitVector[i]);
+        }
+    }
+
+    /** Changes digit of the field, keeping the digit taken if the field is finished. */
+    private void replaceDigit(int n, int digit)
+    {
+        if (_finished[n])
+        {
+            release(_digitVector[n]);
+            take(digit);
         }
-        return false;
+        _digitVector[n] = digit;
     }
 
     /**
@@ -111,6 +164,7 @@ public class PlayerMemory
             if (_mask[i] != MaskState.HARD && _digitVector[i] != 0)
             {
                 _rewards[i][_digitVector[i]-1] += amount;
+                _prioritiesOutdated |= amount != 0;
             }
         }
     }
@@ -133,7 +187,7 @@ public class PlayerMemory
         {
             throw new Sudoku.DigitOutOfRangeException("Sudoku digit out of range");
         }
-        _digitVector[n] = digit;
+        replaceDigit(n, digit);
     }
 
     /**
@@ -149,7 +203,7 @@ public class PlayerMemory
         {
             throw new Sudoku.DigitOutOfRangeException("Sudoku digit out of range");
         }
-        _digitVector[n] = digit;
+        replaceDigit(n, digit);
         if (mask)
         {
             _mask[n] = MaskState.HARD;
@@ -166,67 +220,116 @@ public class PlayerMemory
 
     public float getAward(int n, int digit) {return _rewards[n][digit-1];}
 
-    public boolean getCollision(int n, int digit) {return _collisions[n][digit-1] || alreadyAccepted(digit);}
+    public boolean getCollision(int n, int digit)
+    {
+        final int word = (digit - 1) >>> 6;
+        final long bit = 1L << (digit - 1);
+        return ((_collisions[n][word] | _collidingDigits[word]) & bit) != 0 || alreadyAccepted(digit);
+    }
 
-    public void setCollision(int n, int digit) {_collisions[n][digit-1] = true;}
+    /** Checks if the digit collides on the field till the reset - not counting digits accepted on other fields. */
+    private boolean isCollidingForGood(int n, int digit)
+    {
+        final int word = (digit - 1) >>> 6;
+        return ((_collisions[n][word] | _collidingDigits[word]) & (1L << (digit - 1))) != 0;
+    }
 
-    public void setDigitColliding(int digit)
+    /**
+     * Finds the digit of the highest priority which does not collide on the field.
+     * Digits colliding till the reset are passed by the field's cursor once, so repeated rejections cost
+     * amortised O(1) per digit, while the remaining digits are checked just as getCollision() does.
+     * @param n	internal index of sudoku field
+     * @return	the best digit, or 0 if every digit collides
+     */
+    public int getBestDigit(int n)
     {
         final int sudokuSize = _digitVector.length;
-        for (int i = 0; i < sudokuSize; ++i)
+        final int[] priorities = _digitPriorities[n];
+        int p = _priorityCursors[n];
+        while (p < sudokuSize && isCollidingForGood(n, priorities[p]))
+            ++p;
+        _priorityCursors[n] = p;
+        for (; p < sudokuSize; ++p)
         {
-            _collisions[i][digit-1] = true;
+            if (!getCollision(n, priorities[p]))
+                return priorities[p];
         }
+        return 0;
     }
 
+    public void setCollision(int n, int digit) {_collisions[n][(digit - 1) >>> 6] |= 1L << (digit - 1);}
+
+    /** Marks the digit as colliding on every field. */
+    public void setDigitColliding(int digit) {_collidingDigits[(digit - 1) >>> 6] |= 1L << (digit - 1);}
+
     public int getTablePriority(int p){return _tablePriorities[p];}
 
     public int getDigitPriority(int n, int p){return _digitPriorities[n][p];}
 
+    /**
+     * Orders digits of each Table from the highest to the lowest weight, and Tables from the lowest to the highest sum
+     * of weights. Ties are broken by the lower index (digit or Table) first.
+     * Weights and indices are packed into long keys sorted in a preallocated buffer, so nothing is allocated.
+     * Priorities depend on rewards only, so they are recomputed only after rewards changed.
+     */
     public void prioritizeTables()
     {
+        if (!_prioritiesOutdated)
+            return;
+        _prioritiesOutdated = false;
+        Arrays.fill(_priorityCursors, 0);
         final int sudokuSize = _digitVector.length;
         for (int i = 0; i < sudokuSize; ++i) // Sort digits by weight for each Table
         {
-            final WeightValuePair[] digitWeightPair = new WeightValuePair[sudokuSize];
             for (int j = 0; j < sudokuSize; ++j)
             {
-                digitWeightPair[j] = new WeightValuePair(_rewards[i][j], j + 1);
+                // Sort from highest to lowest - negated weight keeps equal weights in order of digits
+                _sortKeys[j] = sortKey(~sortableBits(_rewards[i][j]), j);
             }
-            // Sort from highest to lowest
-            Arrays.sort(digitWeightPair, Collections.reverseOrder());
+            Arrays.sort(_sortKeys);
             for (int j = 0; j < sudokuSize; ++j)
             {
-                _digitPriorities[i][j] = digitWeightPair[j]._value;
+                _digitPriorities[i][j] = (int) _sortKeys[j] + 1;
             }
         }
 
-        final WeightValuePair[] indexWeightPair = new WeightValuePair[sudokuSize];
         for (int i = 0; i < sudokuSize; ++i) // Sum weights for each Table
         {
-            indexWeightPair[i] = new WeightValuePair(0, i);
+            float weight = 0;
             for (int j = 0; j < sudokuSize; ++j)
             {
-                indexWeightPair[i]._weight += _rewards[i][j];
+                weight += _rewards[i][j];
             }
+            _sortKeys[i] = sortKey(sortableBits(weight), i);
         }
         // Sort tables from lowest to highest
-        Arrays.sort(indexWeightPair);
+        Arrays.sort(_sortKeys);
         for (int i = 0; i < sudokuSize; ++i)
         {
-            _tablePriorities[i] = indexWeightPair[i]._value;
+            _tablePriorities[i] = (int) _sortKeys[i];
         }
     }
 
-    private void genericReset(int sudokuSize, MaskState mState)
+    /** Bits of the float, ordered as signed ints just like Float.compare() orders the floats. */
+    private static int sortableBits(float weight)
     {
+        final int bits = Float.floatToIntBits(weight);
+        return bits ^ ((bits >> 31) & 0x7fffffff);
+    }
+
+    private static long sortKey(int sortableWeight, int index)
+    {
+        return ((long) sortableWeight << 32) | index;
+    }
+
+    private void genericReset(int sudokuSize, MaskState mState, int iterationId)
+    {
+        Arrays.fill(_collidingDigits, 0L);
+        Arrays.fill(_priorityCursors, 0);
         for (int i = 0; i < sudokuSize; ++i)
         {
             boolean maskValue = (_mask[i] == MaskState.HARD || _mask[i] == mState);
-            for (int j = 0; j < sudokuSize; ++j)
-            {
-                _collisions[i][j] = maskValue;
-            }
+            Arrays.fill(_collisions[i], maskValue ? -1L : 0L);     // every digit collides on a masked field
             if (maskValue && _digitVector[i] != 0)
             {
                 setDigitColliding(_digitVector[i]);
@@ -238,15 +341,17 @@ public class PlayerMemory
             _accepted[i] = 0;
             _finished[i] = maskValue;
         }
-        _iterationId++;
+        recountTakenDigits();
+        _iterationId = iterationId;
     }
 
     /**
      * Reset memory values that are not retained between "big" iterations.
      * Should be called each time before starting solving original sudoku (before every "big" iteration).
      * Digit vector and mask have to be initialized for this to work.
+     * @param iterationId   ID of the new iteration
      */
-    public void hardReset()
+    public void hardReset(int iterationId)
     {
         final int sudokuSize = _digitVector.length;
         // Undo fixate solved digits
@@ -258,15 +363,16 @@ public class PlayerMemory
             }
         }
         // Clear memory
-        genericReset(sudokuSize, MaskState.HARD);
+        genericReset(sudokuSize, MaskState.HARD, iterationId);
     }
 
     /**
      * Reset memory values that are not retained between "small" iterations.
      * Should be called each time before starting solving sudoku (before every "small" iteration).
      * Digit vector and mask have to be initialized for this to work.
+     * @param iterationId   ID of the new iteration
      */
-    public void softReset()
+    public void softReset(int iterationId)
     {
         final int sudokuSize = _digitVector.length;
         // Temporarily fixate solved digits
@@ -278,7 +384,7 @@ public class PlayerMemory
             }
         }
         // Clear memory
-        genericReset(sudokuSize, MaskState.SOFT);
+        genericReset(sudokuSize, MaskState.SOFT, iterationId);
     }
 
     public int getIterationId()
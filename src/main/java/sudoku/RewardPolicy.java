@@ -0,0 +1,17 @@
+package sudoku;
+
+/**
+ * Policy of rewarding Players by the Teacher at the end of a big iteration.
+ * A Player gets a single reward value, which is added to the weights of all digits it has currently inputted.
+ * Implementations are used by a single Teacher at a time, so they do not need to be thread-safe.
+ */
+public interface RewardPolicy
+{
+	/**
+	 * Computes rewards of all Players for the solution of a big iteration.
+	 * @param solution	solution of the finished big iteration
+	 * @param topology	index of fields of all Players
+	 * @param rewards	output - reward (or punishment if negative) for every Player, indexed by playerId
+	 */
+	void computeRewards(Sudoku solution, Topology topology, float[] rewards);
+}
@@ -18,9 +18,12 @@ public class SharedProtocols
 	/** Protocol for rewarding Players by the Teacher. */
 	public interface AssessmentProtocol {}
 
-	/** Protocol for agents' validation with help of the Timer agent. */
+	/** Protocol for agents' validation with help of the TimerManager agent. */
 	public interface ValidationProtocol {}
 
-	/** Protocol between TimerManager and Timers, used when some time is measured in parallel. */
+	/** Protocol between TimerManager and its scheduled timeouts, used when some time is measured in parallel. */
 	public interface TimeMeasurementProtocol {}
+
+	/** Protocol for reporting results of solving a batch of riddles by the SudokuSupervisor. */
+	public interface BatchProtocol {}
 }
@@ -0,0 +1,426 @@
+package sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Append-only binary journal of solutions returned by Teachers.
+ * Records are encoded on the calling thread, but written to the disk by a single writer task, so the caller
+ * (SudokuSupervisor) never waits for the disk. The writer occupies a thread of the given executor, or its own thread.
+ * It takes all records queued in the meantime and writes them at once, followed by a single force of the file
+ * (group commit).
+ *
+ * File layout: a header (MAGIC, VERSION), followed by records:
+ * riddleId (long), iterationNO (int), timestamp in ms (long), rank (byte),
+ * digits packed with the smallest number of bits able to store the size of the Sudoku, and a bitset of clues.
+ */
+public class SolutionJournal implements Closeable
+{
+	/** Single record of the journal. The board is kept packed, so that scanning the journal stays cheap. */
+	public static class Record
+	{
+		public final long _riddleId;
+		public final int _iterationNO;
+		public final long _timestamp;
+		public final int _rank;
+		private final byte[] _packedBoard;
+
+		Record(long riddleId, int iterationNO, long timestamp, int rank, byte[] packedBoard)
+		{
+			this._riddleId = riddleId;
+			this._iterationNO = iterationNO;
+			this._timestamp = timestamp;
+			this._rank = rank;
+			this._packedBoard = packedBoard;
+		}
+
+		/**
+		 * Unpack the board of the record.
+		 * @return	Sudoku saved in the record
+		 */
+		public Sudoku getSudoku()
+		{
+			return unpackBoard(_rank, _packedBoard);
+		}
+	}
+
+	/** Marker of the journal file. */
+	static final int MAGIC = 0x534A524E;
+	/** Version of the file layout. */
+	static final int VERSION = 1;
+	/** Size of the file header. */
+	static final int HEADER_SIZE = 8;
+	/** Size of the record without the packed board. */
+	static final int RECORD_HEADER_SIZE = 8 + 4 + 8 + 1;
+	/** Marker put into the queue to stop the writer. */
+	private static final byte[] END_OF_JOURNAL = new byte[0];
+
+	/** Channel of the journal file. */
+	private final FileChannel _channel;
+	/** Encoded records waiting for the writer. */
+	private final BlockingQueue<byte[]> _queue;
+	/** Released when the writer finishes. */
+	private final CountDownLatch _writerFinished;
+	/** Failure of the writer, if any. */
+	private volatile IOException _failure;
+	/** Flag - was the journal closed. */
+	private boolean _isClosed;
+
+	/**
+	 * Open a journal for appending. A new file is created if it does not exist.
+	 * @param path	path to the journal file
+	 * @return		opened journal
+	 * @throws IOException	if the file cannot be opened, or it is not a journal
+	 */
+	public static SolutionJournal open(Path path) throws IOException
+	{
+		return open(path, task -> {
+			final Thread writer = new Thread(task, "solution-journal-writer");
+			writer.setDaemon(true);
+			writer.start();
+		});
+	}
+
+	/**
+	 * Open a journal for appending, writing on a thread of given executor. A new file is created if it does not exist.
+	 * @param path		path to the journal file
+	 * @param executor	executor allowed to block on the disk - the writer keeps one of its threads until closed
+	 * @return			opened journal
+	 * @throws IOException	if the file cannot be opened, or it is not a journal
+	 */
+	public static SolutionJournal open(Path path, Executor executor) throws IOException
+	{
+		final FileChannel channel = FileChannel.open(path,
+				StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try
+		{
+			if (channel.size() == 0)
+			{
+				final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION);
+				header.flip();
+				while (header.hasRemaining())
+					channel.write(header);
+			}
+			else
+			{
+				checkHeader(channel);
+			}
+			channel.position(channel.size());
+		}
+		catch (IOException e)
+		{
+			channel.close();
+			throw e;
+		}
+		return new SolutionJournal(channel, executor);
+	}
+
+	private SolutionJournal(FileChannel channel, Executor executor)
+	{
+		this._channel = channel;
+		this._queue = new LinkedBlockingQueue<>();
+		this._writerFinished = new CountDownLatch(1);
+		this._failure = null;
+		this._isClosed = false;
+		executor.execute(this::writeRecords);
+	}
+
+	/**
+	 * Queue a solution to be written. Never waits for the disk.
+	 * @param riddleId		ID of the solved riddle
+	 * @param iterationNO	number of the iteration that returned the solution
+	 * @param sudoku		the solution
+	 * @throws IOException	if the writer has failed before
+	 */
+	public void append(long riddleId, int iterationNO, Sudoku sudoku) throws IOException
+	{
+		if (_failure != null)
+			throw _failure;
+		if (_isClosed)
+			throw new IOException("Solution journal is closed.");
+
+		final byte[] packedBoard = packBoard(sudoku);
+		final ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_SIZE + packedBoard.length);
+		record.putLong(riddleId)
+				.putInt(iterationNO)
+				.putLong(System.currentTimeMillis())
+				.put((byte) sudoku.getRank())
+				.put(packedBoard);
+		_queue.add(record.array());
+	}
+
+	/**
+	 * Write all queued records and close the journal.
+	 * @throws IOException	if some records could not be written
+	 */
+	@Override
+	public void close() throws IOException
+	{
+		if (_isClosed)
+			return;
+		_isClosed = true;
+		_queue.add(END_OF_JOURNAL);
+		try
+		{
+			_writerFinished.await();
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		finally
+		{
+			_channel.close();
+		}
+		if (_failure != null)
+			throw _failure;
+	}
+
+	/** Main loop of the writer. */
+	private void writeRecords()
+	{
+		try
+		{
+			writeQueuedRecords();
+		}
+		finally
+		{
+			_writerFinished.countDown();
+		}
+	}
+
+	private void writeQueuedRecords()
+	{
+		final List<byte[]> group = new ArrayList<>();
+		boolean isEnd = false;
+		while (!isEnd)
+		{
+			try
+			{
+				group.add(_queue.take());
+				_queue.drainTo(group);
+				isEnd = group.get(group.size() - 1) == END_OF_JOURNAL;
+				if (_failure == null)
+					writeGroup(group);
+			}
+			catch (InterruptedException e)
+			{
+				isEnd = true;
+			}
+			catch (IOException e)
+			{
+				_failure = e;
+			}
+			group.clear();
+		}
+	}
+
+	/** Write a group of records with a single write and a single force. */
+	private void writeGroup(List<byte[]> group) throws IOException
+	{
+		int size = 0;
+		for (byte[] record : group)
+			size += record.length;
+		if (size == 0)
+			return;
+
+		final ByteBuffer buffer = ByteBuffer.allocate(size);
+		for (byte[] record : group)
+			buffer.put(record);
+		buffer.flip();
+		while (buffer.hasRemaining())
+			_channel.write(buffer);
+		_channel.force(false);
+	}
+
+	/**
+	 * Open a journal for reading.
+	 * @param path	path to the journal file
+	 * @return		reader of the records
+	 * @throws IOException	if the file cannot be opened, or it is not a journal
+	 */
+	public static Reader read(Path path) throws IOException
+	{
+		return new Reader(FileChannel.open(path, StandardOpenOption.READ), Reader.DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Sequential reader of the journal. The file is memory-mapped window by window.
+	 * A truncated record at the end of the file (e.g. after a crash) is ignored.
+	 */
+	public static class Reader implements Iterator<Record>, Closeable
+	{
+		/** Default size of a single mapped window of the file. */
+		static final long DEFAULT_WINDOW_SIZE = 64L << 20;
+
+		private final FileChannel _channel;
+		private final long _fileSize;
+		private final long _windowSize;
+		private MappedByteBuffer _window;
+		private long _windowStart;
+		private long _position;
+
+		Reader(FileChannel channel, long windowSize) throws IOException
+		{
+			this._channel = channel;
+			this._windowSize = windowSize;
+			try
+			{
+				this._fileSize = channel.size();
+				checkHeader(channel);
+			}
+			catch (IOException e)
+			{
+				channel.close();
+				throw e;
+			}
+			this._position = HEADER_SIZE;
+			this._window = null;
+			this._windowStart = 0;
+		}
+
+		@Override
+		public boolean hasNext()
+		{
+			if (_position + RECORD_HEADER_SIZE > _fileSize)
+				return false;
+			final int rank = ensureMapped(_position, RECORD_HEADER_SIZE).get((int) (_position - _windowStart + 20));
+			return rank > 0 && _position + RECORD_HEADER_SIZE + packedBoardSize(rank) <= _fileSize;
+		}
+
+		@Override
+		public Record next()
+		{
+			if (!hasNext())
+				throw new NoSuchElementException("No more records in the journal.");
+
+			final int rank = ensureMapped(_position, RECORD_HEADER_SIZE).get((int) (_position - _windowStart + 20));
+			final int recordSize = RECORD_HEADER_SIZE + packedBoardSize(rank);
+			final ByteBuffer window = ensureMapped(_position, recordSize);
+			window.position((int) (_position - _windowStart));
+			final long riddleId = window.getLong();
+			final int iterationNO = window.getInt();
+			final long timestamp = window.getLong();
+			window.get();
+			final byte[] packedBoard = new byte[recordSize - RECORD_HEADER_SIZE];
+			window.get(packedBoard);
+			_position += recordSize;
+			return new Record(riddleId, iterationNO, timestamp, rank, packedBoard);
+		}
+
+		@Override
+		public void close() throws IOException
+		{
+			_window = null;
+			_channel.close();
+		}
+
+		/** Make sure the given range of the file is mapped, moving the window if needed. */
+		private MappedByteBuffer ensureMapped(long position, int length)
+		{
+			if (_window == null || position < _windowStart || position + length > _windowStart + _window.limit())
+			{
+				try
+				{
+					_windowStart = position;
+					_window = _channel.map(FileChannel.MapMode.READ_ONLY, position,
+							Math.min(Math.max(_windowSize, length), _fileSize - position));
+				}
+				catch (IOException e)
+				{
+					throw new RuntimeException("Cannot map the solution journal.", e);
+				}
+			}
+			return _window;
+		}
+	}
+
+	/** Check if the file starts with a valid header. */
+	private static void checkHeader(FileChannel channel) throws IOException
+	{
+		final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+		header.flip();
+		if (header.remaining() < HEADER_SIZE || header.getInt() != MAGIC)
+			throw new IOException("Not a solution journal.");
+		final int version = header.getInt();
+		if (version != VERSION)
+			throw new IOException("Unsupported version of the solution journal: " + version);
+	}
+
+	/** Number of bits needed to store any digit of the Sudoku of given size (0 - empty field included). */
+	private static int bitsPerDigit(int size)
+	{
+		return 32 - Integer.numberOfLeadingZeros(size);
+	}
+
+	/** Size of the packed board (digits and clues) of the Sudoku of given rank. */
+	static int packedBoardSize(int rank)
+	{
+		final int size = rank * rank, fieldCount = size * size;
+		return (fieldCount * bitsPerDigit(size) + 7) / 8 + (fieldCount + 7) / 8;
+	}
+
+	/** Pack digits of the Sudoku (row after row) and the bitset of its clues. */
+	static byte[] packBoard(Sudoku sudoku)
+	{
+		final int size = sudoku.getSize(), fieldCount = size * size, bits = bitsPerDigit(size);
+		final byte[] packed = new byte[packedBoardSize(sudoku.getRank())];
+		final int cluesOffset = (fieldCount * bits + 7) / 8;
+		int bitPosition = 0;
+		for (int y = 0, i = 0; y < size; ++y)
+		{
+			for (int x = 0; x < size; ++x, ++i, bitPosition += bits)
+			{
+				final int digit = sudoku.getDigit(x, y);
+				for (int b = 0; b < bits; ++b)
+				{
+					if ((digit & (1 << b)) != 0)
+						packed[(bitPosition + b) >>> 3] |= 1 << ((bitPosition + b) & 7);
+				}
+				if (sudoku.getMask(x, y))
+					packed[cluesOffset + (i >>> 3)] |= 1 << (i & 7);
+			}
+		}
+		return packed;
+	}
+
+	/** Unpack the Sudoku packed by packBoard. */
+	static Sudoku unpackBoard(int rank, byte[] packed)
+	{
+		final int size = rank * rank, fieldCount = size * size, bits = bitsPerDigit(size);
+		final int cluesOffset = (fieldCount * bits + 7) / 8;
+		final Sudoku sudoku = new Sudoku(rank);
+		int bitPosition = 0;
+		for (int y = 0, i = 0; y < size; ++y)
+		{
+			for (int x = 0; x < size; ++x, ++i, bitPosition += bits)
+			{
+				int digit = 0;
+				for (int b = 0; b < bits; ++b)
+				{
+					if ((packed[(bitPosition + b) >>> 3] & (1 << ((bitPosition + b) & 7))) != 0)
+						digit |= 1 << b;
+				}
+				if ((packed[cluesOffset + (i >>> 3)] & (1 << (i & 7))) != 0)
+					sudoku.insertClue(x, y, digit);
+				else
+					sudoku.insertDigit(x, y, digit);
+			}
+		}
+		return sudoku;
+	}
+}
@@ -1,6 +1,6 @@
 package sudoku;
 
-import java.util.function.Function;
+import java.util.Arrays;
 
 import static java.lang.Math.sqrt;
 
@@ -13,30 +13,55 @@ public class Sudoku
 	private final int _rank;
 	/** Board size */
 	private final int _size;
-	/** Current values of board fields */
-	private int[][] _board;
-	/** Array of flags indicating hard-coded board fields. If true, field cannot be modified. */
-	private boolean[][] _mask;
+	/**
+	 * Current values of board fields, stored row after row in a single contiguous array.
+	 * Field (x, y) is kept under index y * _size + x, what matches the global ID of the Table for this field.
+	 */
+	private final int[] _fields;
+	/** Bitset of flags indicating hard-coded board fields (indexed as _fields). If set, field cannot be modified. */
+	private final long[] _clues;
+	/** Number of 64-bit words needed for a set of all digits. */
+	private final int _digitWords;
+	/**
+	 * Occupancy bitmasks of units - _digitWords words per unit, bit (digit - 1) is set if digit occurs in the unit.
+	 * Units are numbered like Players: columns first, then rows, then blocks.
+	 */
+	private final long[] _occupancy;
+	/** Number of occurrences of each digit in each unit, indexed unit * _size + (digit - 1). */
+	private final int[] _digitCounts;
+	/** Number of empty fields, kept up to date by every modification of the board. */
+	private int _emptyCount;
+	/** Zobrist-style hash of the board - XOR of keys of all (field, digit) pairs of non-empty fields. */
+	private long _hash;
 
 	public Sudoku(int rank)
 	{
 		this._rank = rank;
 		this._size = rank*rank;
-		this._board = new int[this._size][this._size];
-		this._mask = new boolean[this._size][this._size];
+		this._fields = new int[this._size * this._size];
+		this._clues = new long[wordCount(this._size * this._size)];
+		this._digitWords = wordCount(this._size);
+		this._occupancy = new long[3 * this._size * this._digitWords];
+		this._digitCounts = new int[3 * this._size * this._size];
+		this._emptyCount = this._fields.length;
+		this._hash = 0L;
 	}
 
 	public Sudoku(Sudoku sudoku)
 	{
 		this._rank = sudoku._rank;
 		this._size = sudoku._size;
-		this._board = new int[this._size][];
-		this._mask = new boolean[this._size][];
-		for (int i = 0; i < this._size; ++i)
-		{
-			this._board[i] = sudoku._board[i].clone();
-			this._mask[i] = sudoku._mask[i].clone();
-		}
+		this._fields = new int[sudoku._fields.length];
+		this._clues = new long[sudoku._clues.length];
+		this._digitWords = sudoku._digitWords;
+		this._occupancy = new long[sudoku._occupancy.length];
+		this._digitCounts = new int[sudoku._digitCounts.length];
+		System.arraycopy(sudoku._fields, 0, this._fields, 0, this._fields.length);
+		System.arraycopy(sudoku._clues, 0, this._clues, 0, this._clues.length);
+		System.arraycopy(sudoku._occupancy, 0, this._occupancy, 0, this._occupancy.length);
+		System.arraycopy(sudoku._digitCounts, 0, this._digitCounts, 0, this._digitCounts.length);
+		this._emptyCount = sudoku._emptyCount;
+		this._hash = sudoku._hash;
 	}
 
 	/** Custom exception thrown when trying to initialize board with incorrect size. */
@@ -66,11 +91,26 @@ public class Sudoku
 		}
 	}
 
-	public int[][] getBoard(){return _board;}
+	/**
+	 * Get a copy of the board.
+	 * @return	2d array of sudoku digits, indexed [x][y] (0 means that the field is empty)
+	 */
+	public int[][] getBoard()
+	{
+		final int[][] board = new int[_size][_size];
+		for (int y = 0, i = 0; y < _size; ++y)
+		{
+			for (int x = 0; x < _size; ++x, ++i)
+			{
+				board[x][y] = _fields[i];
+			}
+		}
+		return board;
+	}
 
 	/**
 	 * Set board default state.
-	 * @param board		2d array of sudoku digits (0 means that the field is empty)
+	 * @param board		2d array of sudoku digits, indexed [x][y] (0 means that the field is empty)
 	 */
 	public void setBoard(int[][] board)
 	{
@@ -78,18 +118,50 @@ public class Sudoku
 		{
 			throw new Sudoku.IncorrectBoardSizeException("Board size doesn't match sudoku size");
 		}
-		for (int i = 0; i < _size; ++i)
+		final int[] fields = new int[_fields.length];
+		for (int y = 0, i = 0; y < _size; ++y)
 		{
-			for (int j = 0; j < _size; ++j)
+			for (int x = 0; x < _size; ++x, ++i)
 			{
-				if (board[i][j] >= 0 && board[i][j] <= _size)
-				{
-					_board[i][j] = board[i][j];
-					_mask[i][j] = (board[i][j] != 0);
-				}
-				else
+				fields[i] = board[x][y];
+			}
+		}
+		setBoard(fields);
+	}
+
+	/**
+	 * Set board default state.
+	 * @param fields	sudoku digits stored row after row, as read in natural order (0 means that the field is empty)
+	 */
+	public void setBoard(int[] fields)
+	{
+		if (fields.length != _fields.length)
+		{
+			throw new Sudoku.IncorrectBoardSizeException("Board size doesn't match sudoku size");
+		}
+		for (int digit : fields)
+		{
+			if (digit < 0 || digit > _size)
+			{
+				throw new Sudoku.DigitOutOfRangeException("Sudoku digit out of range");
+			}
+		}
+		Arrays.fill(_clues, 0L);
+		Arrays.fill(_occupancy, 0L);
+		Arrays.fill(_digitCounts, 0);
+		_emptyCount = _fields.length;
+		_hash = 0L;
+		for (int y = 0, i = 0; y < _size; ++y)
+		{
+			for (int x = 0; x < _size; ++x, ++i)
+			{
+				_fields[i] = fields[i];
+				if (fields[i] != 0)
 				{
-					throw new Sudoku.DigitOutOfRangeException("Sudoku digit out of range");
+					_clues[i >>> 6] |= 1L << i;
+					occupy(x, y, fields[i]);
+					--_emptyCount;
+					_hash ^= zobristKey(i, fields[i]);
 				}
 			}
 		}
@@ -101,23 +173,79 @@ public class Sudoku
 	 */
 	public void reset()
 	{
-		for (int i = 0; i < this._size; ++i)
+		for (int y = 0, i = 0; y < _size; ++y)
 		{
-			for (int j = 0; j < this._size; ++j)
+			for (int x = 0; x < _size; ++x, ++i)
 			{
-				if (!_mask[i][j])
+				if ((_clues[i >>> 6] & (1L << i)) == 0 && _fields[i] != 0)
 				{
-					_board[i][j] = 0;
+					release(x, y, _fields[i]);
+					_hash ^= zobristKey(i, _fields[i]);
+					++_emptyCount;
+					_fields[i] = 0;
 				}
 			}
 		}
 	}
 
-	public void insertDigit(int x, int y, int digit) {_board[x][y] = digit;}
+	/**
+	 * Insert digit into the field, updating occupancy of its column, row and block,
+	 * as well as the count of empty fields and the hash of the board.
+	 * If the digit is out of range (0 is acceptable - means the field is empty), DigitOutOfRangeException is thrown.
+	 * @param x		x coordinate of the field
+	 * @param y		y coordinate of the field
+	 * @param digit	digit to be inserted
+	 */
+	public void insertDigit(int x, int y, int digit)
+	{
+		if (digit < 0 || digit > _size)
+		{
+			throw new Sudoku.DigitOutOfRangeException("Sudoku digit out of range");
+		}
+		final int i = index(x, y);
+		if (_fields[i] != 0)
+		{
+			release(x, y, _fields[i]);
+			_hash ^= zobristKey(i, _fields[i]);
+			++_emptyCount;
+		}
+		_fields[i] = digit;
+		if (digit != 0)
+		{
+			occupy(x, y, digit);
+			_hash ^= zobristKey(i, digit);
+			--_emptyCount;
+		}
+	}
+
+	/**
+	 * Insert digit into the field and make it hard-coded, as if it was given in the riddle.
+	 * Used when a field value is already known for sure (e.g. deduced by SudokuPreSolver).
+	 * @param x		x coordinate of the field
+	 * @param y		y coordinate of the field
+	 * @param digit	digit to be inserted (1 to size)
+	 */
+	public void insertClue(int x, int y, int digit)
+	{
+		if (digit == 0)
+		{
+			throw new Sudoku.DigitOutOfRangeException("Clue cannot be empty");
+		}
+		insertDigit(x, y, digit);
+		final int i = index(x, y);
+		_clues[i >>> 6] |= 1L << i;
+	}
 
-	public int getDigit(int x, int y) { return _board[x][y]; }
+	public int getDigit(int x, int y) { return _fields[index(x, y)]; }
 
-	public boolean getMask(int x, int y) { return _mask[x][y]; }
+	/** Digit of the field of given index (y * size + x) - equal to the tableId of the field. */
+	public int getDigit(int index) { return _fields[index]; }
+
+	public boolean getMask(int x, int y)
+	{
+		final int i = index(x, y);
+		return (_clues[i >>> 6] & (1L << i)) != 0;
+	}
 
 	public int getSize()
 	{
@@ -141,47 +269,162 @@ public class Sudoku
 
 	public int getEmptyFieldsCount()
 	{
+		return _emptyCount;
+	}
+
+	/**
+	 * Get hash of the current board, maintained incrementally on every modification.
+	 * Boards with the same digits have the same hash, so comparing hashes is a constant-time check
+	 * whether a board changed (with a collision probability of about 2^-64).
+	 * @return	Zobrist-style hash of the board
+	 */
+	public long getBoardHash()
+	{
+		return _hash;
+	}
+
+	/**
+	 * Check whether the digit can be placed in the field without a conflict with any other field
+	 * of its column, row or block. Takes constant time.
+	 * If the digit is out of range (0 included), DigitOutOfRangeException is thrown.
+	 * @param x		x coordinate of the field
+	 * @param y		y coordinate of the field
+	 * @param digit	digit to be checked (1 to size)
+	 * @return		true, if no other field of the column, row or block holds the digit
+	 */
+	public boolean isLegal(int x, int y, int digit)
+	{
+		if (digit < 1 || digit > _size)
+		{
+			throw new Sudoku.DigitOutOfRangeException("Sudoku digit out of range");
+		}
+		final int own = (_fields[index(x, y)] == digit) ? 1 : 0;
+		final int d = digit - 1;
+		return _digitCounts[columnUnit(x) * _size + d] == own
+				&& _digitCounts[rowUnit(y) * _size + d] == own
+				&& _digitCounts[blockUnit(x, y) * _size + d] == own;
+	}
+
+	/**
+	 * Get digits that can be legally placed in the field.
+	 * @param x		x coordinate of the field
+	 * @param y		y coordinate of the field
+	 * @return		bitset of candidates - bit (digit - 1) is set if the digit is legal in the field
+	 */
+	public long[] candidates(int x, int y)
+	{
+		final long[] candidates = new long[_digitWords];
+		candidates(x, y, candidates);
+		return candidates;
+	}
+
+	/**
+	 * Get digits that can be legally placed in the field, without allocating.
+	 * Takes time proportional to the number of words of a digit set (one word up to size 64).
+	 * @param x				x coordinate of the field
+	 * @param y				y coordinate of the field
+	 * @param candidates	output bitset (at least getDigitWordCount() words) - bit (digit - 1) is set if legal
+	 * @return				number of candidates
+	 */
+	public int candidates(int x, int y, long[] candidates)
+	{
+		final int column = columnUnit(x) * _digitWords;
+		final int row = rowUnit(y) * _digitWords;
+		final int block = blockUnit(x, y) * _digitWords;
 		int count = 0;
-		for (int i = 0; i < this._size; ++i)
+		for (int w = 0; w < _digitWords; ++w)
 		{
-			for (int j = 0; j < this._size; ++j)
+			long free = ~(_occupancy[column + w] | _occupancy[row + w] | _occupancy[block + w]);
+			if (w == _digitWords - 1)
 			{
-				if (_board[i][j] == 0)
+				free &= lastWordMask();
+			}
+			candidates[w] = free;
+			count += Long.bitCount(free);
+		}
+		// The field's own digit is legal, as long as it is its only occurrence in all three units
+		final int digit = _fields[index(x, y)];
+		if (digit != 0 && isLegal(x, y, digit))
+		{
+			candidates[(digit - 1) >>> 6] |= 1L << (digit - 1);
+			++count;
+		}
+		return count;
+	}
+
+	/**
+	 * Check whether the Sudoku is completely filled and no digit repeats in any column, row or block.
+	 * Every unit has size fields, so it is enough to check that every unit holds all the digits.
+	 * @return		true, if the Sudoku is solved
+	 */
+	public boolean isSolvedAndValid()
+	{
+		if (_emptyCount != 0)
+		{
+			return false;
+		}
+		final long lastWordMask = lastWordMask();
+		for (int unit = 0; unit < 3 * _size; ++unit)
+		{
+			final int offset = unit * _digitWords;
+			for (int w = 0; w < _digitWords - 1; ++w)
+			{
+				if (_occupancy[offset + w] != -1L)
 				{
-					++count;
+					return false;
 				}
 			}
+			if (_occupancy[offset + _digitWords - 1] != lastWordMask)
+			{
+				return false;
+			}
 		}
-		return count;
+		return true;
+	}
+
+	/** Number of 64-bit words of a digit set (as returned by candidates). */
+	public int getDigitWordCount()
+	{
+		return _digitWords;
 	}
 
 	/** Prints the board of the Sudoku in natural, human-friendly style. */
 	public void printNatural()
 	{
-		// Named lambda used as a subfunction for printing the horizontal line
-		Function<String, String> getLine = (String c) -> {
-			String line = "";
-			for(int i = 0; i < _size + _rank + 1; ++i)
-				line += c + " ";
-			return line;
-		};
-		String row;
+		System.out.print(toNaturalString());
+	}
+
+	/**
+	 * Board of the Sudoku in natural, human-friendly style, one line per row.
+	 * Digits are right-aligned to the width of the largest digit, so that columns stay aligned for ranks above 3.
+	 */
+	public String toNaturalString()
+	{
+		final int digitWidth = Integer.toString(_size).length();
+		final int rowLength = 2 * _rank + _size * (digitWidth + 1) + 1;
+		final StringBuilder line = new StringBuilder();
+		for(int i = 0; i < (rowLength + 1) / 2; ++i)
+			line.append("- ");
+		line.append(System.lineSeparator());
 
+		final StringBuilder board = new StringBuilder();
 		for(int y = 0; y < _size; ++y)
 		{
 			if(y % _rank == 0)
-				System.out.println(getLine.apply("-"));
-			row = "";
+				board.append(line);
 			for(int x = 0; x < _size; ++x)
 			{
 				if(x % _rank == 0)
-					row += "| ";
-				row += _board[x][y] + " ";
+					board.append("| ");
+				final String digit = Integer.toString(getDigit(x, y));
+				for(int i = digit.length(); i < digitWidth; ++i)
+					board.append(' ');
+				board.append(digit).append(' ');
 			}
-			row += "|";
-			System.out.println(row);
+			board.append('|').append(System.lineSeparator());
 		}
-		System.out.println(getLine.apply("-"));
+		board.append(line);
+		return board.toString();
 	}
 
 	@Override
@@ -189,12 +432,94 @@ public class Sudoku
 	{
 		if (this == o) return true;
 		if (o == null || getClass() != o.getClass()) return false;
+		if (_hash != ((Sudoku) o)._hash) return false;
 
-		for(int y = 0; y < _size; ++y)
-			for(int x = 0; x < _size; ++x)
-				if(_board[x][y] != ((Sudoku) o).getDigit(x,y))
-					return false;
+		return Arrays.equals(_fields, ((Sudoku) o)._fields);
+	}
 
-		return true;
+	@Override
+	public int hashCode()
+	{
+		return (int) (_hash ^ (_hash >>> 32));
+	}
+
+	/** Mark one more occurrence of the digit in the column, row and block of the field (x, y). */
+	private void occupy(int x, int y, int digit)
+	{
+		addOccurrence(columnUnit(x), digit);
+		addOccurrence(rowUnit(y), digit);
+		addOccurrence(blockUnit(x, y), digit);
+	}
+
+	/** Remove one occurrence of the digit from the column, row and block of the field (x, y). */
+	private void release(int x, int y, int digit)
+	{
+		removeOccurrence(columnUnit(x), digit);
+		removeOccurrence(rowUnit(y), digit);
+		removeOccurrence(blockUnit(x, y), digit);
+	}
+
+	private void addOccurrence(int unit, int digit)
+	{
+		final int d = digit - 1;
+		if (_digitCounts[unit * _size + d]++ == 0)
+		{
+			_occupancy[unit * _digitWords + (d >>> 6)] |= 1L << d;
+		}
+	}
+
+	private void removeOccurrence(int unit, int digit)
+	{
+		final int d = digit - 1;
+		if (--_digitCounts[unit * _size + d] == 0)
+		{
+			_occupancy[unit * _digitWords + (d >>> 6)] &= ~(1L << d);
+		}
+	}
+
+	private int columnUnit(int x)
+	{
+		return x;
+	}
+
+	private int rowUnit(int y)
+	{
+		return _size + y;
+	}
+
+	private int blockUnit(int x, int y)
+	{
+		return 2 * _size + (y / _rank) * _rank + x / _rank;
+	}
+
+	/**
+	 * Key of the (field, digit) pair for the Zobrist hash.
+	 * Keys are derived with the SplitMix64 finalizer, so they are the same for all boards and need no table.
+	 */
+	private long zobristKey(int fieldIndex, int digit)
+	{
+		long z = ((long) fieldIndex * (_size + 1) + digit) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	/** Mask of bits used by digits in the last word of a digit set. */
+	private long lastWordMask()
+	{
+		final int usedBits = _size - ((_digitWords - 1) << 6);
+		return usedBits == 64 ? -1L : (1L << usedBits) - 1;
+	}
+
+	/** Index of the field (x, y) in the flat board representation. */
+	private int index(int x, int y)
+	{
+		return y * _size + x;
+	}
+
+	/** Number of 64-bit words needed to store given number of bits. */
+	private static int wordCount(int bits)
+	{
+		return (bits + 63) >>> 6;
 	}
 }
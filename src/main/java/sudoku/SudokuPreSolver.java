@@ -0,0 +1,145 @@
+package sudoku;
+
+/**
+ * Deterministic stage solving fields of the Sudoku that are forced by simple constraint propagation.
+ * Run before agents are spawned, so that the Teacher creates negotiating Tables only for fields that really need them.
+ * Fields found are promoted to clues (hard-coded fields).
+ */
+public class SudokuPreSolver
+{
+	/** Sudoku being pre-solved. */
+	private final Sudoku _sudoku;
+	/** Fields of columns, rows and blocks of the Sudoku. */
+	private final Topology _topology;
+	/** Scratch bitset of candidates of a single field. */
+	private final long[] _candidates;
+	/** Flag - was an empty field without any candidate found. */
+	private boolean _contradiction;
+
+	private SudokuPreSolver(Sudoku sudoku)
+	{
+		this._sudoku = sudoku;
+		this._topology = Topology.of(sudoku.getRank());
+		this._candidates = new long[sudoku.getDigitWordCount()];
+		this._contradiction = false;
+	}
+
+	/**
+	 * Repeatedly fills naked singles (fields with only one candidate) and hidden singles (digits that fit only one
+	 * field of a column, row or block), until no more fields can be deduced.
+	 * Deduced digits are inserted as clues. When a contradiction is found (an empty field without candidates,
+	 * or a digit missing in a unit without any field left for it), pre-solving stops and the rest is left for the agents.
+	 * @param sudoku	Sudoku to be pre-solved (modified in place)
+	 * @return			number of fields eliminated (promoted to clues)
+	 */
+	public static int preSolve(Sudoku sudoku)
+	{
+		return new SudokuPreSolver(sudoku).run();
+	}
+
+	private int run()
+	{
+		int eliminated = 0;
+		int found;
+		do
+		{
+			found = fillNakedSingles();
+			if (!_contradiction)
+				found += fillHiddenSingles();
+			eliminated += found;
+		}
+		while (found > 0 && !_contradiction);
+		return eliminated;
+	}
+
+	/**
+	 * Fills all empty fields having exactly one candidate.
+	 * @return	number of filled fields
+	 */
+	private int fillNakedSingles()
+	{
+		final int sudokuSize = _sudoku.getSize();
+		int found = 0;
+		for (int y = 0; y < sudokuSize; ++y)
+		{
+			for (int x = 0; x < sudokuSize; ++x)
+			{
+				if (_sudoku.getDigit(x, y) != 0)
+					continue;
+
+				final int candidateCount = _sudoku.candidates(x, y, _candidates);
+				if (candidateCount == 0)
+				{
+					_contradiction = true;
+					return found;
+				}
+				if (candidateCount == 1)
+				{
+					_sudoku.insertClue(x, y, firstCandidate());
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Fills fields being the only place for some digit in their column, row or block.
+	 * Units are numbered like Players: columns first, then rows, then blocks.
+	 * @return	number of filled fields
+	 */
+	private int fillHiddenSingles()
+	{
+		final int sudokuSize = _sudoku.getSize();
+		int found = 0;
+		for (int unit = 0; unit < 3 * sudokuSize; ++unit)
+		{
+			for (int digit = 1; digit <= sudokuSize; ++digit)
+			{
+				int onlyField = -1;
+				int fieldCount = 0;
+				boolean isPlaced = false;
+				final int[] unitFields = _topology.getTableIds(unit);
+				for (int k = 0; k < sudokuSize && fieldCount < 2 && !isPlaced; ++k)
+				{
+					final Position field = _topology.getPosition(unitFields[k]);
+					final int fieldDigit = _sudoku.getDigit(field.x, field.y);
+					if (fieldDigit == digit)
+					{
+						isPlaced = true;
+					}
+					else if (fieldDigit == 0 && _sudoku.isLegal(field.x, field.y, digit))
+					{
+						onlyField = k;
+						++fieldCount;
+					}
+				}
+				if (isPlaced)
+					continue;
+				if (fieldCount == 0)	// the digit fits no field of the unit
+				{
+					_contradiction = true;
+					return found;
+				}
+				if (fieldCount == 1)
+				{
+					final Position field = _topology.getPosition(unitFields[onlyField]);
+					_sudoku.insertClue(field.x, field.y, digit);
+					++found;
+				}
+			}
+		}
+		return found;
+	}
+
+	/** The lowest digit set in the scratch bitset of candidates. */
+	private int firstCandidate()
+	{
+		for (int w = 0; w < _candidates.length; ++w)
+		{
+			if (_candidates[w] != 0)
+				return (w << 6) + Long.numberOfTrailingZeros(_candidates[w]) + 1;
+		}
+		throw new RuntimeException("No candidate to choose.");
+	}
+}
@@ -0,0 +1,355 @@
+package sudoku;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy reader of Sudoku riddles from a (possibly huge) file.
+ * The file is memory-mapped window by window, and a riddle is parsed only when it is requested,
+ * so the whole file is never read onto the heap.
+ */
+public class SudokuReader implements Iterator<Sudoku>, Closeable
+{
+	/**
+	 * Definition of supported file formats.
+	 * LINE - one riddle per line, one character per field, row after row ('0' or '.' is an empty field,
+	 * 		digits above 9 are written as letters: A = 10, B = 11, ..., Z = 35), e.g. 81 characters for rank 3;
+	 * 		thus limited to ranks up to 5
+	 * GRID - one row per line, fields separated by whitespace ('0' or '.' is an empty field),
+	 * 		riddles separated by blank lines; digits are decimal numbers, so any rank is supported
+	 * JSON - one riddle per line, as an array of rows, e.g. [[0,1,0,3],[...],...]
+	 * In all the formats, lines starting with '#' are treated as comments.
+	 */
+	public enum Format
+	{
+		LINE,
+		GRID,
+		JSON
+	}
+
+	/** Custom exception thrown when a riddle cannot be parsed. */
+	public static class MalformedSudokuException extends RuntimeException
+	{
+		final long _filePosition;
+		public MalformedSudokuException(String msg, long filePosition)
+		{
+			super(msg + " (at byte " + filePosition + ")");
+			this._filePosition = filePosition;
+		}
+	}
+
+	/** Default size of a single mapped window of the file. */
+	private static final long DEFAULT_WINDOW_SIZE = 64L << 20;
+	/** The largest rank that can be written in LINE format - its digits must fit in a single character (up to 'Z'). */
+	public static final int MAX_LINE_RANK = 5;
+
+	/** Channel of the file being read. */
+	private final FileChannel _channel;
+	/** Size of the file. */
+	private final long _fileSize;
+	/** Format of the riddles in the file. */
+	private final Format _format;
+	/** Size of a single mapped window of the file. A single riddle cannot be longer. */
+	private final long _windowSize;
+	/** Currently mapped window of the file. */
+	private MappedByteBuffer _window;
+	/** Position of the mapped window in the file. */
+	private long _windowStart;
+	/** Position of the first byte not read yet. */
+	private long _position;
+	/** Riddle already parsed by hasNext(), but not returned by next() yet. */
+	private Sudoku _next;
+	/** Scratch buffer of parsed digits of a riddle - reused as long as riddles have the same size. */
+	private int[] _fields;
+
+	/**
+	 * Open a file with riddles.
+	 * @param path		path to the file
+	 * @param format	format of the riddles
+	 * @return			reader of the riddles
+	 * @throws IOException	if the file cannot be opened
+	 */
+	public static SudokuReader open(Path path, Format format) throws IOException
+	{
+		return new SudokuReader(FileChannel.open(path, StandardOpenOption.READ), format, DEFAULT_WINDOW_SIZE);
+	}
+
+	/**
+	 * Open a file with riddles, guessing the format by the file extension (.json - JSON, .sdk - GRID, other - LINE).
+	 * @param path		path to the file
+	 * @return			reader of the riddles
+	 * @throws IOException	if the file cannot be opened
+	 */
+	public static SudokuReader open(Path path) throws IOException
+	{
+		final String fileName = path.getFileName().toString().toLowerCase();
+		if (fileName.endsWith(".json"))
+			return open(path, Format.JSON);
+		else if (fileName.endsWith(".sdk"))
+			return open(path, Format.GRID);
+		else
+			return open(path, Format.LINE);
+	}
+
+	SudokuReader(FileChannel channel, Format format, long windowSize) throws IOException
+	{
+		this._channel = channel;
+		this._fileSize = channel.size();
+		this._format = format;
+		this._windowSize = windowSize;
+		this._windowStart = 0;
+		this._position = 0;
+		this._window = null;
+		this._next = null;
+		this._fields = null;
+	}
+
+	@Override
+	public boolean hasNext()
+	{
+		if (_next == null)
+			_next = readNext();
+		return _next != null;
+	}
+
+	@Override
+	public Sudoku next()
+	{
+		if (!hasNext())
+			throw new NoSuchElementException("No more riddles in the file.");
+		final Sudoku sudoku = _next;
+		_next = null;
+		return sudoku;
+	}
+
+	/**
+	 * Get remaining riddles as a sequential stream. Riddles are still parsed one at a time, as they are pulled.
+	 * @return	stream of riddles
+	 */
+	public Stream<Sudoku> stream()
+	{
+		return StreamSupport.stream(
+				Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL),
+				false
+		);
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		_window = null;
+		_channel.close();
+	}
+
+	/**
+	 * Parse next riddle from the file.
+	 * @return	next riddle, or null if there is none left
+	 */
+	private Sudoku readNext()
+	{
+		final long start = skipBlankAndCommentLines();
+		if (start >= _fileSize)
+			return null;
+
+		final long end = findRecordEnd(start);
+		_position = end;
+		switch (_format)
+		{
+			case LINE:
+				return parseLine(start, end);
+			case GRID:
+			case JSON:
+			default:
+				return parseNumbers(start, end);
+		}
+	}
+
+	/**
+	 * Skip whitespace, empty lines and comments.
+	 * @return	position of the first byte of the next record (or file size, if there is none)
+	 */
+	private long skipBlankAndCommentLines()
+	{
+		long p = _position;
+		while (p < _fileSize)
+		{
+			final byte b = byteAt(p);
+			if (b == '#')
+			{
+				while (p < _fileSize && byteAt(p) != '\n')
+					++p;
+			}
+			else if (!isWhitespace(b))
+			{
+				break;
+			}
+			++p;
+		}
+		return p;
+	}
+
+	/**
+	 * Find the end of the record starting at given position.
+	 * A record ends at the end of line - or, in GRID format, at the first blank line.
+	 * If the record crosses the end of the mapped window, the window is moved to the start of the record,
+	 * so that the whole record can be parsed from a single window.
+	 * @return	position just after the last byte of the record
+	 */
+	private long findRecordEnd(long start)
+	{
+		long p = start;
+		boolean lineIsBlank = false;
+		while (p < _fileSize)
+		{
+			if (p - start >= _windowSize)
+				throw new MalformedSudokuException("Riddle is longer than a mapped window", start);
+			if (p >= _windowStart + _window.limit())
+				mapWindow(start);
+			final byte b = byteAt(p);
+			if (b == '\n')
+			{
+				if (_format != Format.GRID || lineIsBlank)
+					break;
+				lineIsBlank = true;
+			}
+			else if (b != ' ' && b != '\t' && b != '\r')
+			{
+				lineIsBlank = false;
+			}
+			++p;
+		}
+		return p;
+	}
+
+	/** Parse a riddle written in LINE format, one character per field. */
+	private Sudoku parseLine(long start, long end)
+	{
+		long p = end;
+		while (p > start && isWhitespace(byteAt(p - 1)))		// Trim trailing '\r' and spaces
+			--p;
+		final int fieldCount = (int) (p - start);
+		if (fieldCount > MAX_LINE_RANK * MAX_LINE_RANK * MAX_LINE_RANK * MAX_LINE_RANK)
+			throw new MalformedSudokuException(
+					"LINE format supports ranks up to " + MAX_LINE_RANK + ", use GRID or JSON format", start);
+		final int[] fields = fieldsBuffer(fieldCount);
+		for (int i = 0; i < fieldCount; ++i)
+		{
+			final byte b = byteAt(start + i);
+			final int digit = (b == '.') ? 0 : Character.digit(b, 36);
+			if (digit < 0)
+				throw new MalformedSudokuException("Unexpected character '" + (char) b + "'", start + i);
+			fields[i] = digit;
+		}
+		return createSudoku(fields, start);
+	}
+
+	/** Parse a riddle written as a sequence of numbers (GRID and JSON formats). */
+	private Sudoku parseNumbers(long start, long end)
+	{
+		int fieldCount = 0;
+		int[] fields = fieldsBuffer(-1);
+		long p = start;
+		while (p < end)
+		{
+			final byte b = byteAt(p);
+			if (b >= '0' && b <= '9')
+			{
+				int number = 0;
+				while (p < end && byteAt(p) >= '0' && byteAt(p) <= '9')
+				{
+					number = 10 * number + (byteAt(p) - '0');
+					++p;
+				}
+				fields = appendField(fields, fieldCount++, number);
+				continue;
+			}
+			if (b == '.' && _format == Format.GRID)
+				fields = appendField(fields, fieldCount++, 0);
+			else if (b == '-')
+				throw new MalformedSudokuException("Negative digit", p);
+			++p;
+		}
+		if (fields.length != fieldCount)
+			fields = Arrays.copyOf(fields, fieldCount);	// Next riddles of the same size reuse the exact buffer
+		_fields = fields;
+		return createSudoku(fields, start);
+	}
+
+	/** Create a Sudoku of a rank matching the number of fields. */
+	private Sudoku createSudoku(int[] fields, long start)
+	{
+		final int rank = (int) Math.round(Math.sqrt(Math.sqrt(fields.length)));
+		if (rank < 1 || rank * rank * rank * rank != fields.length)
+			throw new MalformedSudokuException("Number of fields (" + fields.length + ") is not a rank^4", start);
+
+		final Sudoku sudoku = new Sudoku(rank);
+		try
+		{
+			sudoku.setBoard(fields);
+		}
+		catch (Sudoku.DigitOutOfRangeException e)
+		{
+			throw new MalformedSudokuException(e.getMessage(), start);
+		}
+		return sudoku;
+	}
+
+	/**
+	 * Get the scratch buffer of digits.
+	 * @param fieldCount	required exact size of the buffer, or -1 if not known yet
+	 */
+	private int[] fieldsBuffer(int fieldCount)
+	{
+		if (_fields == null || (fieldCount >= 0 && _fields.length != fieldCount))
+			_fields = new int[fieldCount >= 0 ? fieldCount : 81];
+		return _fields;
+	}
+
+	/** Append a digit to the buffer, growing it if needed. */
+	private static int[] appendField(int[] fields, int index, int digit)
+	{
+		if (index == fields.length)
+			fields = Arrays.copyOf(fields, Math.max(2 * fields.length, 16));
+		fields[index] = digit;
+		return fields;
+	}
+
+	/** Read a byte of the file, mapping another window of the file if needed. */
+	private byte byteAt(long position)
+	{
+		if (_window == null || position < _windowStart || position >= _windowStart + _window.limit())
+			mapWindow(position);
+		return _window.get((int) (position - _windowStart));
+	}
+
+	/** Map a window of the file starting at given position. */
+	private void mapWindow(long position)
+	{
+		try
+		{
+			_windowStart = position;
+			_window = _channel.map(
+					FileChannel.MapMode.READ_ONLY, position, Math.min(_windowSize, _fileSize - position));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Cannot map the file with riddles.", e);
+		}
+	}
+
+	private static boolean isWhitespace(byte b)
+	{
+		return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+	}
+}
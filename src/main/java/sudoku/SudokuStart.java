@@ -1,17 +1,55 @@
 package sudoku;
 
 import akka.actor.typed.ActorSystem;
+import com.typesafe.config.Config;
+import com.typesafe.config.ConfigFactory;
+
 import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Starting point of the whole application.
+ * Optional argument: path to the file with the riddle (see SudokuReader for supported formats).
+ * With arguments "--batch <file> [parallelism] [maxIterations]", all riddles of the file are solved as one batch.
+ * With additional arguments "--journal <file>", every returned solution is saved in the SolutionJournal.
  */
 public class SudokuStart
 {
-	public static void main(String[] args)
+	public static void main(String[] arguments) throws IOException
 	{
-		final ActorSystem<SudokuSupervisor.Protocol> sudokuGuardian
-				= ActorSystem.create(SudokuSupervisor.create(), "startSudoku");
+		final List<String> argList = new ArrayList<>(Arrays.asList(arguments));
+		Path journalFile = null;
+		final int journalArg = argList.indexOf("--journal");
+		if (journalArg >= 0 && journalArg + 1 < argList.size())
+		{
+			journalFile = Paths.get(argList.get(journalArg + 1));
+			argList.subList(journalArg, journalArg + 2).clear();
+		}
+		final String[] args = argList.toArray(new String[0]);
+		final Config config = ConfigFactory.load();
+
+		final ActorSystem<SudokuSupervisor.Protocol> sudokuGuardian;
+		if (args.length > 1 && args[0].equals("--batch"))
+		{
+			sudokuGuardian = ActorSystem.create(SudokuSupervisor.createForBatches(journalFile), "startSudoku",
+					config, DispatcherLayout.control(config));
+			sudokuGuardian.tell(new SudokuSupervisor.SolveBatchMsg(
+					SudokuReader.open(Paths.get(args[1])),
+					args.length > 2 ? Integer.parseInt(args[2]) : Runtime.getRuntime().availableProcessors(),
+					args.length > 3 ? Integer.parseInt(args[3]) : 100,
+					null
+			));
+		}
+		else
+		{
+			sudokuGuardian = ActorSystem.create(
+					SudokuSupervisor.create(args.length > 0 ? Paths.get(args[0]) : null, journalFile), "startSudoku",
+					config, DispatcherLayout.control(config));
+		}
 		try
 		{
 			System.out.println(">>> Press ENTER to stop SudokuSupervisor <<<");
@@ -28,4 +66,4 @@ public class SudokuStart
 			sudokuGuardian.terminate();
 		}
 	}
-}
\ No newline at end of file
+}
@@ -9,10 +9,21 @@ import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Queue;
+
 /**
  * Simple agent-guardian of the whole multi-agent-system solving Sudoku.
  * Existence required by Akka.
  * Parent of Teacher agent.
+ * Besides solving a single riddle, it can solve batches of riddles (see SolveBatchMsg) within the same actor system,
+ * so that the startup of the system and warm-up of the JVM are paid once per batch.
  */
 public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol>
 {
@@ -59,18 +70,119 @@ public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol
 	public static class IterationFinishedMsg implements Protocol
 	{
 		public final Sudoku _newSolution;
-		public IterationFinishedMsg(Sudoku newSolution)
+		public final long _riddleId;
+		public final int _iterationNO;
+		public IterationFinishedMsg(Sudoku newSolution, long riddleId, int iterationNO)
 		{
 			this._newSolution = newSolution;
+			this._riddleId = riddleId;
+			this._iterationNO = iterationNO;
+		}
+	}
+
+	/**
+	 * Message commanding to solve a batch of riddles.
+	 * Riddles are taken from the iterator one by one, and at most _parallelism of them are solved at once,
+	 * each by its own Teacher. A riddle is given up after _maxIterations big iterations.
+	 * If the iterator is Closeable, it is closed after the batch is finished.
+	 * Batches sent while another one is being solved are queued.
+	 */
+	public static class SolveBatchMsg implements Protocol
+	{
+		final Iterator<Sudoku> _riddles;
+		final int _parallelism;
+		final int _maxIterations;
+		final ActorRef<SharedProtocols.BatchProtocol> _replyTo;
+		public SolveBatchMsg(
+				Iterator<Sudoku> riddles,
+				int parallelism,
+				int maxIterations,
+				ActorRef<SharedProtocols.BatchProtocol> replyTo)
+		{
+			if (parallelism < 1 || maxIterations < 1)
+				throw new IllegalArgumentException("Parallelism and iterations limit must be positive.");
+			this._riddles = riddles;
+			this._parallelism = parallelism;
+			this._maxIterations = maxIterations;
+			this._replyTo = replyTo;
+		}
+	}
+
+	/** Result of solving a single riddle of the batch. */
+	public static class RiddleSolvedMsg implements SharedProtocols.BatchProtocol
+	{
+		/** Position of the riddle in the batch, starting from 0. */
+		public final int _riddleNO;
+		/** The last solution returned by the Teacher. */
+		public final Sudoku _solution;
+		/** Flag - is the solution complete and valid. */
+		public final boolean _isSolved;
+		/** Number of big iterations performed by the Teacher. */
+		public final int _iterationCount;
+		/** Time of solving the riddle, from spawning the Teacher to the last solution. */
+		public final long _elapsedNanos;
+		public RiddleSolvedMsg(int riddleNO, Sudoku solution, boolean isSolved, int iterationCount, long elapsedNanos)
+		{
+			this._riddleNO = riddleNO;
+			this._solution = solution;
+			this._isSolved = isSolved;
+			this._iterationCount = iterationCount;
+			this._elapsedNanos = elapsedNanos;
+		}
+	}
+
+	/** Message sent after all riddles of the batch are finished. */
+	public static class BatchFinishedMsg implements SharedProtocols.BatchProtocol
+	{
+		public final int _riddleCount;
+		public final int _solvedCount;
+		public final long _elapsedNanos;
+		public BatchFinishedMsg(int riddleCount, int solvedCount, long elapsedNanos)
+		{
+			this._riddleCount = riddleCount;
+			this._solvedCount = solvedCount;
+			this._elapsedNanos = elapsedNanos;
+		}
+	}
+
+	/** State of a riddle being solved as a part of the batch. */
+	private static class BatchRiddle
+	{
+		final int _riddleNO;
+		final ActorRef<Teacher.Protocol> _teacher;
+		final long _startNanos;
+		int _iterationCount;
+		BatchRiddle(int riddleNO, ActorRef<Teacher.Protocol> teacher, long startNanos)
+		{
+			this._riddleNO = riddleNO;
+			this._teacher = teacher;
+			this._startNanos = startNanos;
+			this._iterationCount = 0;
 		}
 	}
 
 	/** Sudoku riddle to be solved by the app. */
 	private Sudoku _sudoku;
+	/** File the riddle is read from. If null, an empty riddle is solved. */
+	private final Path _sudokuFile;
 	/** Child Teacher agent. */
 	private ActorRef<Teacher.Protocol> _teacher;
 	/** Parent - agent for debugging when simulating Teacher's crash. */
 	private ActorRef<String> _simulationParent;
+	/** Batches waiting to be solved. The head of the queue is the batch being solved. */
+	private final Queue<SolveBatchMsg> _batches;
+	/** Riddles of the current batch being solved at the moment. Key: riddleId. */
+	private final Map<Long, BatchRiddle> _batchRiddles;
+	/** Number of riddles of the current batch taken from its iterator so far. */
+	private int _batchRiddleCount;
+	/** Number of riddles of the current batch solved so far. */
+	private int _batchSolvedCount;
+	/** Start time of the current batch. */
+	private long _batchStartNanos;
+	/** ID given to the next riddle - unique within the Supervisor, so that Teachers' names never clash. */
+	private long _nextRiddleId;
+	/** Journal of solutions returned by Teachers. If null, solutions are not saved. */
+	private SolutionJournal _journal;
 
 	/**
 	 * Public method that calls private constructor.
@@ -79,20 +191,74 @@ public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol
 	 */
 	public static Behavior<Protocol> create()
 	{
-		return Behaviors.setup(SudokuSupervisor::new);
+		return create(null);
 	}
 
-	private SudokuSupervisor(ActorContext<Protocol> context)
+	/**
+	 * Public method that calls private constructor.
+	 * Existence required by Akka.
+	 * @param sudokuFile	file with the riddle to be solved (the first riddle of the file is taken)
+	 * @return 		wrapped Behavior
+	 */
+	public static Behavior<Protocol> create(Path sudokuFile)
+	{
+		return create(sudokuFile, null);
+	}
+
+	/**
+	 * Public method that calls private constructor.
+	 * Existence required by Akka.
+	 * @param sudokuFile	file with the riddle to be solved (the first riddle of the file is taken)
+	 * @param journalFile	journal where every returned solution is appended (see SolutionJournal)
+	 * @return 		wrapped Behavior
+	 */
+	public static Behavior<Protocol> create(Path sudokuFile, Path journalFile)
+	{
+		return Behaviors.setup(context -> new SudokuSupervisor(context, sudokuFile, journalFile, true));
+	}
+
+	/**
+	 * Public method that calls private constructor.
+	 * Created Supervisor does not solve any riddle until it gets SolveBatchMsg.
+	 * @return 		wrapped Behavior
+	 */
+	public static Behavior<Protocol> createForBatches()
+	{
+		return createForBatches(null);
+	}
+
+	/**
+	 * Public method that calls private constructor.
+	 * Created Supervisor does not solve any riddle until it gets SolveBatchMsg.
+	 * @param journalFile	journal where every returned solution is appended (see SolutionJournal)
+	 * @return 		wrapped Behavior
+	 */
+	public static Behavior<Protocol> createForBatches(Path journalFile)
+	{
+		return Behaviors.setup(context -> new SudokuSupervisor(context, null, journalFile, false));
+	}
+
+	private SudokuSupervisor(
+			ActorContext<Protocol> context, Path sudokuFile, Path journalFile, boolean solveSingleRiddle)
 	{
 		super(context);
+		_sudokuFile = sudokuFile;
+		_batches = new ArrayDeque<>();
+		_batchRiddles = new HashMap<>();
+		_nextRiddleId = 1;
+		openJournal(journalFile);
 		context.getLog().info("SudokuSupervisor started");
-		readSudoku();
-		_teacher = context.spawn(
-				Behaviors.supervise(
-						Teacher.create(new Teacher.CreateMsg("TheOnlyTeacher", _sudoku, context.getSelf()))
-				).onFailure(SupervisorStrategy.restart())
-				, "teacher"
-		);
+		if (solveSingleRiddle)
+		{
+			readSudoku();
+			_teacher = context.spawn(
+					Behaviors.supervise(
+							Teacher.create(new Teacher.CreateMsg("TheOnlyTeacher", _sudoku, context.getSelf()))
+					).onFailure(SupervisorStrategy.restart())
+					, "teacher"
+					, DispatcherLayout.control(context.getSystem())
+			);
+		}
 	}
 
 	/**
@@ -108,6 +274,7 @@ public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol
 				.onMessage(SimulateTeacherCrashMsg.class, this::onSimulateTeacherCrash)
 				.onMessage(TeacherWillRestartMsg.class, this::onTeacherWillRestart)
 				.onMessage(IterationFinishedMsg.class, this::onIterationFinished)
+				.onMessage(SolveBatchMsg.class, this::onSolveBatch)
 				.onSignal(PostStop.class, signal -> onPostStop())
 				.build();
 	}
@@ -119,6 +286,7 @@ public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol
 	 */
 	private SudokuSupervisor onPostStop()
 	{
+		closeJournal();
 		getContext().getLog().info("SudokuSupervisor stopped.");
 		return this;
 	}
@@ -132,7 +300,8 @@ public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol
 	private Behavior<Protocol> onTermination(TerminateMsg terminateMsg)
 	{
 		getContext().getLog().info("SudokuSupervisor will be terminated.");
-		terminateMsg._replyTo.tell("I will be terminated.");
+		if (terminateMsg._replyTo != null)
+			terminateMsg._replyTo.tell("I will be terminated.");
 		return Behaviors.stopped();
 	}
 
@@ -157,27 +326,205 @@ public class SudokuSupervisor extends AbstractBehavior<SudokuSupervisor.Protocol
 	 */
 	private Behavior<Protocol> onTeacherWillRestart(TeacherWillRestartMsg msg)
 	{
-		_simulationParent.tell(msg._msg);
+		if (_simulationParent != null)
+			_simulationParent.tell(msg._msg);
 		return this;
 	}
 
 	/**
 	 * As every iteration finishes, SudokuSupervisor saves new (iterated) solution on the hard drive.
+	 * If the solution belongs to a riddle of the batch, the riddle may be finished and the next one started.
 	 * @param msg	message containing new solution represented by Sudoku object
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<Protocol> onIterationFinished(IterationFinishedMsg msg)
 	{
-		// TODO Emil - zapisywanie kolejnej iteracji rozwiazania do pliku
+		appendToJournal(msg);
+
+		final BatchRiddle riddle = _batchRiddles.get(msg._riddleId);
+		if (riddle == null)			// Not a riddle of the batch, or a late message of already finished one
+			return this;
 
+		++riddle._iterationCount;
+		final boolean isSolved = msg._newSolution.isSolvedAndValid();
+		if (isSolved || riddle._iterationCount >= _batches.element()._maxIterations)
+		{
+			finishBatchRiddle(msg._riddleId, riddle, msg._newSolution, isSolved);
+			continueBatch();
+		}
+		return this;
+	}
+
+	/** Opens the journal of solutions, if its file is given. */
+	private void openJournal(Path journalFile)
+	{
+		if (journalFile == null)
+			return;
+		try
+		{
+			_journal = SolutionJournal.open(journalFile, DispatcherLayout.blockingIo(getContext().getSystem()));
+		}
+		catch (IOException e)
+		{
+			throw new RuntimeException("Cannot open the solution journal " + journalFile, e);
+		}
+	}
+
+	/**
+	 * Queues the solution to be saved in the journal. The journal writes on the blocking I/O dispatcher, so it never blocks.
+	 * If the journal fails, it is closed and solutions are not saved any more.
+	 */
+	private void appendToJournal(IterationFinishedMsg msg)
+	{
+		if (_journal == null)
+			return;
+		try
+		{
+			_journal.append(msg._riddleId, msg._iterationNO, msg._newSolution);
+		}
+		catch (IOException e)
+		{
+			getContext().getLog().error("Solution journal failed, solutions are not saved any more: {}", e.getMessage());
+			closeJournal();
+		}
+	}
+
+	/** Closes the journal of solutions, waiting for the queued solutions to be written. */
+	private void closeJournal()
+	{
+		if (_journal == null)
+			return;
+		try
+		{
+			_journal.close();
+		}
+		catch (IOException e)
+		{
+			getContext().getLog().error("Cannot close the solution journal: {}", e.getMessage());
+		}
+		_journal = null;
+	}
+
+	/**
+	 * Behaviour towards SolveBatchMsg message.
+	 * The batch is started at once, or queued if another batch is being solved.
+	 * @param msg	message containing riddles to be solved
+	 * @return 		wrapped Behavior
+	 */
+	private Behavior<Protocol> onSolveBatch(SolveBatchMsg msg)
+	{
+		_batches.add(msg);
+		if (_batches.size() == 1)
+			startBatch();
 		return this;
 	}
 
+	/** Starts solving the batch from the head of the queue. */
+	private void startBatch()
+	{
+		_batchRiddleCount = 0;
+		_batchSolvedCount = 0;
+		_batchStartNanos = System.nanoTime();
+		getContext().getLog().info("Solving a new batch of riddles");
+		continueBatch();
+	}
+
+	/**
+	 * Spawns Teachers for next riddles of the current batch, up to the parallelism of the batch.
+	 * If there are no riddles left, the batch is finished and the next queued one is started.
+	 */
+	private void continueBatch()
+	{
+		final SolveBatchMsg batch = _batches.element();
+		while (_batchRiddles.size() < batch._parallelism && batch._riddles.hasNext())
+			startBatchRiddle(batch._riddles.next());
+
+		if (_batchRiddles.isEmpty())
+		{
+			finishBatch(batch);
+			_batches.remove();
+			if (!_batches.isEmpty())
+				startBatch();
+		}
+	}
+
+	/** Spawns a Teacher solving given riddle of the current batch. */
+	private void startBatchRiddle(Sudoku sudoku)
+	{
+		final long riddleId = _nextRiddleId++;
+		final long startNanos = System.nanoTime();
+		final Sudoku riddle = new Sudoku(sudoku);		// riddles of the batch belong to its sender
+		final int eliminated = SudokuPreSolver.preSolve(riddle);
+		getContext().getLog().info("Pre-solving eliminated {} fields of the riddle #{}", eliminated, _batchRiddleCount);
+		final ActorRef<Teacher.Protocol> teacher = getContext().spawn(
+				Behaviors.supervise(
+						Teacher.create(new Teacher.CreateMsg("Teacher-" + riddleId, riddle, getContext().getSelf(),
+								Teacher.Settings.DEFAULT.withRiddleId(riddleId)))
+				).onFailure(SupervisorStrategy.restart())
+				, "teacher-" + riddleId
+				, DispatcherLayout.control(getContext().getSystem())
+		);
+		_batchRiddles.put(riddleId, new BatchRiddle(_batchRiddleCount++, teacher, startNanos));
+	}
+
+	/** Stops the Teacher of the riddle and reports the result. */
+	private void finishBatchRiddle(long riddleId, BatchRiddle riddle, Sudoku solution, boolean isSolved)
+	{
+		final long elapsedNanos = System.nanoTime() - riddle._startNanos;
+		_batchRiddles.remove(riddleId);
+		getContext().stop(riddle._teacher);
+		if (isSolved)
+			++_batchSolvedCount;
+
+		final ActorRef<SharedProtocols.BatchProtocol> replyTo = _batches.element()._replyTo;
+		if (replyTo != null)
+			replyTo.tell(new RiddleSolvedMsg(riddle._riddleNO, solution, isSolved, riddle._iterationCount, elapsedNanos));
+		getContext().getLog().info("Riddle #{} {} after {} iterations in {} ms",
+				riddle._riddleNO, isSolved ? "solved" : "not solved", riddle._iterationCount, elapsedNanos / 1000000);
+	}
+
+	/** Reports the end of the batch and closes its source of riddles. */
+	private void finishBatch(SolveBatchMsg batch)
+	{
+		final long elapsedNanos = System.nanoTime() - _batchStartNanos;
+		if (batch._replyTo != null)
+			batch._replyTo.tell(new BatchFinishedMsg(_batchRiddleCount, _batchSolvedCount, elapsedNanos));
+		getContext().getLog().info("Batch finished: {} of {} riddles solved in {} ms",
+				_batchSolvedCount, _batchRiddleCount, elapsedNanos / 1000000);
+
+		if (batch._riddles instanceof Closeable)
+		{
+			try
+			{
+				((Closeable) batch._riddles).close();
+			}
+			catch (IOException e)
+			{
+				getContext().getLog().warn("Cannot close the source of riddles: {}", e.getMessage());
+			}
+		}
+	}
+
 	/**
 	 * Action of reading _sudoku from file.
+	 * Fields forced by constraint propagation are solved at once, before the Teacher spawns its agents.
 	 */
 	private void readSudoku()
 	{
-		_sudoku = new Sudoku(3);	// TODO Emil - odczytywanie zadanego sudoku z pliku
+		_sudoku = new Sudoku(3);
+		if (_sudokuFile != null)
+		{
+			try (SudokuReader reader = SudokuReader.open(_sudokuFile))
+			{
+				if (reader.hasNext())
+					_sudoku = reader.next();
+			}
+			catch (IOException e)
+			{
+				throw new RuntimeException("Cannot read the riddle from " + _sudokuFile, e);
+			}
+		}
+		final int eliminated = SudokuPreSolver.preSolve(_sudoku);
+		getContext().getLog().info("Pre-solving eliminated {} fields", eliminated);
 	}
 }
@@ -8,8 +8,6 @@ import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 
-import java.util.ArrayList;
-
 /**
  * Table agent, who moderates negotiations between 3 players for choosing the best number in the Sudoku cell.
  * A child of the Teacher agent.
@@ -22,6 +20,12 @@ public class Table extends AbstractBehavior<Table.Protocol>
 	/** Protocol interface for messages for initialisation strategy */
 	public interface InitialisationProtocol extends Protocol {}
 
+	/**
+	 * Table ID used by messages created without one.
+	 * Such messages can be handled by a Table, but not routed by a TableShard hosting many Tables.
+	 */
+	public static final int UNKNOWN_TABLE_ID = -1;
+
 	/** Message for creating the Table. */
 	public static class CreateMsg implements InitialisationProtocol
 	{
@@ -44,15 +48,26 @@ public class Table extends AbstractBehavior<Table.Protocol>
 		final ActorRef<Player.Protocol> _playerToRegister;
 		final int _playerId;
 		final ActorRef<Teacher.Protocol> _replyTo;
+		final int _tableId;
 		public RegisterPlayerMsg(
 				ActorRef<Player.Protocol> playerToRegister,
 				int playerId,
 				ActorRef<Teacher.Protocol> replyTo
 		)
+		{
+			this(playerToRegister, playerId, replyTo, UNKNOWN_TABLE_ID);
+		}
+		public RegisterPlayerMsg(
+				ActorRef<Player.Protocol> playerToRegister,
+				int playerId,
+				ActorRef<Teacher.Protocol> replyTo,
+				int tableId
+		)
 		{
 			this._playerToRegister = playerToRegister;
 			this._playerId = playerId;
 			this._replyTo = replyTo;
+			this._tableId = tableId;
 		}
 	}
 
@@ -62,11 +77,14 @@ public class Table extends AbstractBehavior<Table.Protocol>
 		public final ActorRef<Player.Protocol> _replyTo;
 		public final int _playerId;
 		public final int _iterationId;
-		protected NegotiationsMsg(ActorRef<Player.Protocol> replyTo, int playerId, int iterationId)
+		/** Global ID of the addressed Table, used by a TableShard for routing. */
+		public final int _tableId;
+		protected NegotiationsMsg(ActorRef<Player.Protocol> replyTo, int playerId, int iterationId, int tableId)
 		{
 			this._replyTo = replyTo;
 			this._playerId = playerId;
 			this._iterationId = iterationId;
+			this._tableId = tableId;
 		}
 	}
 
@@ -82,7 +100,17 @@ public class Table extends AbstractBehavior<Table.Protocol>
 				int playerId,
 				int iterationId)
 		{
-			super(replyTo, playerId, iterationId);
+			this(offeredDigit, digitWeight, replyTo, playerId, iterationId, UNKNOWN_TABLE_ID);
+		}
+		public OfferMsg(
+				int offeredDigit,
+				float digitWeight,
+				ActorRef<Player.Protocol> replyTo,
+				int playerId,
+				int iterationId,
+				int tableId)
+		{
+			super(replyTo, playerId, iterationId, tableId);
 			this._offeredDigit = offeredDigit;
 			this._digitWeight = digitWeight;
 		}
@@ -102,7 +130,18 @@ public class Table extends AbstractBehavior<Table.Protocol>
 				int playerId,
 				int iterationId)
 		{
-			super(replyTo, playerId, iterationId);
+			this(digits, weights, collisions, replyTo, playerId, iterationId, UNKNOWN_TABLE_ID);
+		}
+		public AdditionalInfoMsg(
+				int[] digits,
+				float[] weights,
+				boolean[] collisions,
+				ActorRef<Player.Protocol> replyTo,
+				int playerId,
+				int iterationId,
+				int tableId)
+		{
+			super(replyTo, playerId, iterationId, tableId);
 			this._digits = digits;
 			this._weights = weights;
 			this._collisions = collisions;
@@ -115,7 +154,16 @@ public class Table extends AbstractBehavior<Table.Protocol>
 		public final int _withdrawnDigit;
 		public WithdrawOfferMsg(int withdrawnDigit, ActorRef<Player.Protocol> replyTo, int playerId, int iterationId)
 		{
-			super(replyTo, playerId, iterationId);
+			this(withdrawnDigit, replyTo, playerId, iterationId, UNKNOWN_TABLE_ID);
+		}
+		public WithdrawOfferMsg(
+				int withdrawnDigit,
+				ActorRef<Player.Protocol> replyTo,
+				int playerId,
+				int iterationId,
+				int tableId)
+		{
+			super(replyTo, playerId, iterationId, tableId);
 			this._withdrawnDigit = withdrawnDigit;
 		}
 	}
@@ -130,18 +178,17 @@ public class Table extends AbstractBehavior<Table.Protocol>
 				int playerId,
 				int iterationId)
 		{
-			super(replyTo, playerId, iterationId);
-			this._acceptedDigit = acceptedDigit;
+			this(acceptedDigit, replyTo, playerId, iterationId, UNKNOWN_TABLE_ID);
 		}
-	}
-
-	/** Message commanding the agent to reset it's memory due to start of new iteration. */
-	public static class ResetMemoryMsg implements Protocol, SharedProtocols.NewIterationProtocol
-	{
-		public final ActorRef<Teacher.Protocol> _replyTo;
-		public ResetMemoryMsg(ActorRef<Teacher.Protocol> replyTo)
+		public AcceptNegotiationsResultsMsg(
+				int acceptedDigit,
+				ActorRef<Player.Protocol> replyTo,
+				int playerId,
+				int iterationId,
+				int tableId)
 		{
-			this._replyTo = replyTo;
+			super(replyTo, playerId, iterationId, tableId);
+			this._acceptedDigit = acceptedDigit;
 		}
 	}
 
@@ -163,17 +210,8 @@ public class Table extends AbstractBehavior<Table.Protocol>
 
 	/** Global ID of the Table */
 	private final int _tableId;
-	/** Global position of the Table */
-	private final Position _tablePos;
-	/** Structure containing current state of Table */
-	private final TableMemory _memory;
-	/**
-	 * Map from global Player id to internal index and Player reference
-	 * Data structure for storing Players - agents registered to this Table.
-	 */
-	private AgentMap<ActorRef<Player.Protocol>> _players;
-	/** Reference to Table's parent - the Teacher */
-	private final ActorRef<Teacher.Protocol> _parent;
+	/** Negotiations of the Table's cell. */
+	private final TableNegotiator _negotiator;
 
 	/**
 	 * Public method that calls private constructor.
@@ -190,10 +228,8 @@ public class Table extends AbstractBehavior<Table.Protocol>
 	{
 		super(context);
 		_tableId = createMsg._tableId;
-		_tablePos = createMsg._tablePos;
-		_memory = new TableMemory(createMsg._sudokuSize);
-		_players = new AgentMap<>(3);
-		_parent = createMsg._replyTo;
+		_negotiator = new TableNegotiator(
+				createMsg._tableId, createMsg._tablePos, createMsg._sudokuSize, context.getSelf(), createMsg._replyTo);
 		// context.getLog().info("Table {} created", _TableId);			// left for debugging only
 	}
 
@@ -211,7 +247,6 @@ public class Table extends AbstractBehavior<Table.Protocol>
 				.onMessage(AdditionalInfoMsg.class, this::onAdditionalInfo)
 				.onMessage(WithdrawOfferMsg.class, this::onWithdrawOffer)
 				.onMessage(AcceptNegotiationsResultsMsg.class, this::onAcceptNegotiationsResults)
-				.onMessage(ResetMemoryMsg.class, this::onResetMemory)
 				.onMessage(WakeUpMsg.class, this::onWakeUp)
 				.onMessage(PlayerIsDeadMsg.class, this::onPlayerIsDead)
 				.onSignal(PreRestart.class, signal -> onPreRestart())
@@ -228,221 +263,51 @@ public class Table extends AbstractBehavior<Table.Protocol>
 	 */
 	private Behavior<Protocol> onRegisterPlayer(RegisterPlayerMsg msg)
 	{
-		if (_players.isFull())
-		{
-			msg._replyTo.tell(new Teacher.RegisteredPlayerMsg(msg._playerId, false));
-			throw new IncorrectRegisterException("4th Player cannot be registered");
-		}
-		_players.register(msg._playerId, msg._playerToRegister);
-		msg._replyTo.tell(new Teacher.RegisteredPlayerMsg(msg._playerId, true));
-
+		_negotiator.onRegisterPlayer(msg);
 		return this;
 	}
 
 	/**
-	 * Table tries to evaluate the best offer if gathered enough information.
-	 * If there's not enough information, Table asks Players for it and waits for response.
-	 * When the best offer is chosen, Table informs all the Players about this.
-	 */
-	private void attemptBestOffer()
-	{
-		if (_memory.getOfferCount() == 3) // Gathered offers from all 3 Players
-		{
-			for (int i = 0; i < 3; ++i)
-			{
-				if (!_memory.getSpecifyFlag(i)) // Table might need more information from Player #i
-				{
-					// If not awaiting for message from Player #i (or the message is going to be outdated)
-					final int[] unknownDigits = _memory.getUnknownDigits(i);
-					// Check if the Table truly needs more information from Player #i
-					if (unknownDigits.length > 0)
-					{
-						// Ask Player #i for more information
-						final ActorRef<Player.Protocol> tempPlayerRef = _players.getAgent(i);
-						tempPlayerRef.tell(new Player.AdditionalInfoRequestMsg(
-								unknownDigits, getContext().getSelf(), _tableId, _memory.getIterationId()));
-						_memory.incrementRequestCount(i);
-					}
-					// Table already requested or knows the information it needs from Player #i
-					_memory.setSpecifyFlag(i, true);
-				}
-			}
-			// Table knows all the information from all Players (no conflicts)
-			if (_memory.allSpecifyFlagTrue() && _memory.noRequestsPending())
-			{
-				// So it can choose the best offer
-				_memory.chooseBestOffer();
-				final int bestDigit = _memory.getBestOffer();
-				// And tell every Player about it
-				for (int i = 0; i < 3; ++i)
-				{
-					final ActorRef<Player.Protocol> tempPlayerRef = _players.getAgent(i);
-					tempPlayerRef.tell(new Player.NegotiationsPositiveMsg(
-							bestDigit, getContext().getSelf(), _tableId, _memory.getIterationId()));
-				}
-			}
-		}
-	}
-
-	/**
-	 * Ends negotiations irrevocably.
-	 * Sends TableFinishedNegotiationsMsg to the Teacher reporting finish of the negotiations.
-	 */
-	private void quitNegotiations()
-	{
-		int digitSolution = _memory.getBestOffer();
-		_memory.finishedIterationWithDigit(digitSolution);
-		for (int i = 0; i < 3; ++i)
-		{
-			_players.getAgent(i).tell(new Player.NegotiationsFinishedMsg(
-					digitSolution, getContext().getSelf(), _tableId, _memory.getIterationId()));
-		}
-		_parent.tell(new Teacher.TableFinishedNegotiationsMsg(digitSolution, _tablePos, _tableId));
-	}
-
-	/**
-	 * Register a digit as colliding (denied) and inform proper Players about this fact.
-	 * @param digitColliding	digit to be withdrawn
-	 */
-	private void withdrawAndInform(int digitColliding)
-	{
-		final ArrayList<Integer> playerIndices = _memory.withdrawDigit(digitColliding);
-		if(playerIndices.size() == 0)
-			return;
-
-		for (Integer n : playerIndices)
-		{
-			final ActorRef<Player.Protocol> tempPlayerRef = _players.getAgent(n);
-			tempPlayerRef.tell(new Player.RejectOfferMsg(
-					digitColliding, getContext().getSelf(), _tableId, _memory.getIterationId()));
-		}
-		_memory.setBestOffer(0);
-		_memory.resetAcceptanceCount();
-	}
-
-	/**
-	 * Receives new offer from registered Player.
-	 * This action formally starts the negotiations.
-	 * May reply all Players with RejectOfferMsg.
+	 * Receives new offer from registered Player (see TableNegotiator).
 	 * @param msg	message representing Player's offer of digit to be inputted
 	 * @return		wrapped Behavior
 	 */
 	private Behavior<Protocol> onOffer(OfferMsg msg) // offer
 	{
-		if(_memory.didAlreadyFinished(msg._iterationId))
-			return this;    // ignore late messages
-
-		final int index = _players.getIndex(msg._playerId);
-		final ActorRef<Player.Protocol> player = _players.getAgent(index);
-		final int digit = msg._offeredDigit;
-
-		if (digit == 0) // Player cannot offer anything - Table must finish negotiations immediately
-		{
-			_memory.setBestOffer(0);
-			quitNegotiations();
-			return this;
-		}
-
-		if (_memory.isDenied(digit)) // Digit causes conflict for some Player
-		{
-			_memory.clearOffer(index); // Lack of this line causes some rare bizarre exceptions
-			player.tell(new Player.RejectOfferMsg(digit, getContext().getSelf(), _tableId, _memory.getIterationId()));
-			return this;
-		}
-
-		// Add offer to memory
-		_memory.setOffer(index, digit, msg._digitWeight);
-
-		// Try choosing the best offer
-		attemptBestOffer();
-
+		_negotiator.onOffer(msg);
 		return this;
 	}
 
 	/**
-	 * Receives requested weighs for given digits.
-	 * During this action Table analyses if there is a conflict or not and takes appropriate actions.
-	 * To prevent synchronization issues Table must check if weighed digit is up to date with Tables's one.
-	 * May reply all Players with RejectOfferMsg.
+	 * Receives requested weighs for given digits (see TableNegotiator).
 	 * @param msg	message representing Player's requested weighs for given digits
 	 * @return		wrapped Behavior
 	 */
 	private Behavior<Protocol> onAdditionalInfo(AdditionalInfoMsg msg) // specified
 	{
-		if(_memory.didAlreadyFinished(msg._iterationId))
-			return this;    // ignore late messages
-
-		final int index = _players.getIndex(msg._playerId);
-
-		for (int i = 0; i < msg._digits.length; ++i)
-		{
-			if (msg._collisions[i]) // Digit causes collision for the sender Player
-			{
-				withdrawAndInform(msg._digits[i]);
-			}
-			else
-			{
-				_memory.setWeight(index, msg._digits[i], msg._weights[i]);
-			}
-		}
-		_memory.decrementRequestCount(index);
-
-		// Try choosing the best offer
-		attemptBestOffer();
-
+		_negotiator.onAdditionalInfo(msg);
 		return this;
 	}
 
 	/**
-	 * Action on the Player's present offer withdrawal.
-	 * No reply.
+	 * Action on the Player's present offer withdrawal (see TableNegotiator).
 	 * @param msg	message with layer's withdrawal along with withdrawn digit
 	 * @return		wrapped Behavior
 	 */
 	private Behavior<Protocol> onWithdrawOffer(WithdrawOfferMsg msg) // deny
 	{
-		if(_memory.didAlreadyFinished(msg._iterationId))
-			return this;    // ignore late messages
-
-		withdrawAndInform(msg._withdrawnDigit);
-
+		_negotiator.onWithdrawOffer(msg);
 		return this;
 	}
 
 	/**
-	 * Table collects accepting messages and finishes negotiations.
-	 * Table may also get declining message, what results in continuing the negotiations.
-	 * To prevent synchronization issues Table must check if msg._acceptedDigit is up to date with Table's one.
-	 * May reply to all Players with RejectOfferMsg or NegotiationsFinishedMsg.
+	 * Table collects accepting messages and finishes negotiations (see TableNegotiator).
 	 * @param msg	message with Player's acceptance / decline of present negotiations results.
 	 * @return		wrapped Behavior
 	 */
 	private Behavior<Protocol> onAcceptNegotiationsResults(AcceptNegotiationsResultsMsg msg) // accept
 	{
-		if(_memory.didAlreadyFinished(msg._iterationId))
-			return this;    // ignore late messages
-
-		if (msg._acceptedDigit == _memory.getBestOffer())
-		{
-			_memory.incrementAcceptanceCount();
-			if (_memory.allAcceptances())
-			{
-				quitNegotiations();
-			}
-		}
-
-		return this;
-	}
-
-	/**
-	 * Table resets it's memory to get ready for new iteration.
-	 * @param msg	message from the Teacher
-	 * @return		wrapped Behavior
-	 */
-	private Behavior<Protocol> onResetMemory(ResetMemoryMsg msg)
-	{
-		_memory.reset();
-		msg._replyTo.tell(new Teacher.TablePerformedMemoryResetMsg(_tableId));
+		_negotiator.onAcceptNegotiationsResults(msg);
 		return this;
 	}
 
@@ -453,10 +318,7 @@ public class Table extends AbstractBehavior<Table.Protocol>
 	 */
 	private Behavior<Protocol> onWakeUp(WakeUpMsg msg)
 	{
-		for(int i=0; i < _players.getAgentCount(); i++)
-		{
-			_players.getAgent(i).tell(new Player.WakeUpMsg());
-		}
+		_negotiator.onWakeUp();
 		return this;
 	}
 
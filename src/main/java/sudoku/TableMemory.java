@@ -13,8 +13,8 @@ public class TableMemory
     private final boolean[] _specifyFlags;
     /** Number of requests send to a specific Player (no feedback received). */
     private final int[] _requestCount;
-    /** Mask of forbidden digits. True means, the digit causes a conflict for some Player. */
-    private final boolean[] _deniedMask;
+    /** Bitset of forbidden digits (bit d-1 for digit d). Set bit means, the digit causes a conflict for some Player. */
+    private final long[] _deniedMask;
     /** Number of offers currently proposed by Players (offers don't have to be unique). */
     private int _offerCount;
     /** Number of acceptance messages received from Players. Three messages guarantee insertion of _bestOffer digit. */
@@ -35,7 +35,7 @@ public class TableMemory
         this._uniqueOffers = new ArrayList<>();
         this._specifyFlags = new boolean[3]; // By default initialized to false
         this._requestCount = new int[3]; // By default initialized to 0
-        this._deniedMask = new boolean[sudokuSize]; // By default initialized to false
+        this._deniedMask = new long[(sudokuSize + 63) >>> 6]; // By default initialized to 0
         this._offerCount = 0;
         this._acceptanceCount = 0;
         this._bestOffer = 0;
@@ -83,7 +83,7 @@ public class TableMemory
 
     public void resetAcceptanceCount() {_acceptanceCount = 0;}
 
-    public boolean isDenied(int digit) {return _deniedMask[digit-1];}
+    public boolean isDenied(int digit) {return (_deniedMask[(digit-1) >>> 6] & (1L << (digit-1))) != 0;}
 
     public void setBestOffer(int digit) {_bestOffer = digit;}
 
@@ -184,7 +184,7 @@ public class TableMemory
         final int digitIndex = getUniqueOfferIndex(digit);
         if (digitIndex < _uniqueOffers.size()) // If the offer exists
         {
-            _deniedMask[digit-1] = true;
+            _deniedMask[(digit-1) >>> 6] |= 1L << (digit-1);
             _uniqueOffers.remove(digitIndex);
             for (int i = 0; i < 3; ++i)
             {
@@ -231,7 +231,11 @@ public class TableMemory
         _bestOffer = bestDigit;
     }
 
-    public void reset()
+    /**
+     * Reset memory of the Table for the iteration of given ID.
+     * @param iterationId   ID of the new iteration
+     */
+    public void reset(int iterationId)
     {
         for (int i = 0; i < 3; ++i)
         {
@@ -240,13 +244,13 @@ public class TableMemory
             _requestCount[i] = 0;
         }
         _uniqueOffers.clear();
-        Arrays.fill(_deniedMask, false);
+        Arrays.fill(_deniedMask, 0L);
         _offerCount = 0;
         _acceptanceCount = 0;
         _bestOffer = 0;
         _hasFinishedIteration = false;
         _areNegotiationsFinishedPositively = false;
-        _iterationId++;
+        _iterationId = iterationId;
     }
 
     public boolean didAlreadyFinished(int iterationId)
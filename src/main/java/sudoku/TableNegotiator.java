@@ -0,0 +1,295 @@
+package sudoku;
+
+import akka.actor.typed.ActorRef;
+
+import java.util.ArrayList;
+
+/**
+ * Negotiations of a single Sudoku cell between its 3 Players.
+ * Logic of the Table agent, extracted so that it can be hosted either by a Table (one agent per cell)
+ * or by a TableShard (one agent per group of cells).
+ */
+class TableNegotiator
+{
+	/** Minimal time between two reports of progress to the Teacher - shorter than any check of Tables' liveness. */
+	private static final long PROGRESS_REPORT_NANOS = 50_000_000L;
+
+	/** Global ID of the Table */
+	private final int _tableId;
+	/** Global position of the Table */
+	private final Position _tablePos;
+	/** Structure containing current state of Table */
+	private final TableMemory _memory;
+	/**
+	 * Map from global Player id to internal index and Player reference
+	 * Data structure for storing Players - agents registered to this Table.
+	 */
+	private final AgentMap<ActorRef<Player.Protocol>> _players;
+	/** Reference to the agent hosting this Table - passed to Players as the Table's reference. */
+	private final ActorRef<Table.Protocol> _self;
+	/** Reference to Table's parent - the Teacher */
+	private final ActorRef<Teacher.Protocol> _parent;
+	/** Time (System.nanoTime()) of the last report of progress to the Teacher. */
+	private long _lastProgressReportNanos;
+
+	TableNegotiator(
+			int tableId,
+			Position tablePos,
+			int sudokuSize,
+			ActorRef<Table.Protocol> self,
+			ActorRef<Teacher.Protocol> parent)
+	{
+		this._tableId = tableId;
+		this._tablePos = tablePos;
+		this._memory = new TableMemory(sudokuSize);
+		this._players = new AgentMap<>(3);
+		this._self = self;
+		this._parent = parent;
+		this._lastProgressReportNanos = System.nanoTime() - PROGRESS_REPORT_NANOS;
+	}
+
+	int getTableId()
+	{
+		return _tableId;
+	}
+
+	/**
+	 * Registers new Player to this Table.
+	 * When a 4th Player is about to be registered, IncorrectRegisterException is thrown.
+	 * Replies with RegisteredMsg.
+	 * @param msg	message for registering new Player
+	 */
+	void onRegisterPlayer(Table.RegisterPlayerMsg msg)
+	{
+		if (_players.isFull())
+		{
+			msg._replyTo.tell(new Teacher.RegisteredPlayerMsg(msg._playerId, false));
+			throw new Table.IncorrectRegisterException("4th Player cannot be registered");
+		}
+		_players.register(msg._playerId, msg._playerToRegister);
+		msg._replyTo.tell(new Teacher.RegisteredPlayerMsg(msg._playerId, true));
+	}
+
+	/**
+	 * Table tries to evaluate the best offer if gathered enough information.
+	 * If there's not enough information, Table asks Players for it and waits for response.
+	 * When the best offer is chosen, Table informs all the Players about this.
+	 */
+	private void attemptBestOffer()
+	{
+		if (_memory.getOfferCount() == 3) // Gathered offers from all 3 Players
+		{
+			for (int i = 0; i < 3; ++i)
+			{
+				if (!_memory.getSpecifyFlag(i)) // Table might need more information from Player #i
+				{
+					// If not awaiting for message from Player #i (or the message is going to be outdated)
+					final int[] unknownDigits = _memory.getUnknownDigits(i);
+					// Check if the Table truly needs more information from Player #i
+					if (unknownDigits.length > 0)
+					{
+						// Ask Player #i for more information
+						final ActorRef<Player.Protocol> tempPlayerRef = _players.getAgent(i);
+						tempPlayerRef.tell(new Player.AdditionalInfoRequestMsg(
+								unknownDigits, _self, _tableId, _memory.getIterationId()));
+						_memory.incrementRequestCount(i);
+					}
+					// Table already requested or knows the information it needs from Player #i
+					_memory.setSpecifyFlag(i, true);
+				}
+			}
+			// Table knows all the information from all Players (no conflicts)
+			if (_memory.allSpecifyFlagTrue() && _memory.noRequestsPending())
+			{
+				// So it can choose the best offer
+				_memory.chooseBestOffer();
+				final int bestDigit = _memory.getBestOffer();
+				// And tell every Player about it
+				for (int i = 0; i < 3; ++i)
+				{
+					final ActorRef<Player.Protocol> tempPlayerRef = _players.getAgent(i);
+					tempPlayerRef.tell(new Player.NegotiationsPositiveMsg(
+							bestDigit, _self, _tableId, _memory.getIterationId()));
+				}
+			}
+		}
+	}
+
+	/**
+	 * Ends negotiations irrevocably.
+	 * Sends TableFinishedNegotiationsMsg to the Teacher reporting finish of the negotiations.
+	 */
+	private void quitNegotiations()
+	{
+		int digitSolution = _memory.getBestOffer();
+		_memory.finishedIterationWithDigit(digitSolution);
+		for (int i = 0; i < 3; ++i)
+		{
+			_players.getAgent(i).tell(new Player.NegotiationsFinishedMsg(
+					digitSolution, _self, _tableId, _memory.getIterationId()));
+		}
+		_parent.tell(new Teacher.TableFinishedNegotiationsMsg(
+				digitSolution, _tablePos, _tableId, _memory.getIterationId()));
+	}
+
+	/**
+	 * Register a digit as colliding (denied) and inform proper Players about this fact.
+	 * @param digitColliding	digit to be withdrawn
+	 */
+	private void withdrawAndInform(int digitColliding)
+	{
+		final ArrayList<Integer> playerIndices = _memory.withdrawDigit(digitColliding);
+		if(playerIndices.size() == 0)
+			return;
+
+		for (Integer n : playerIndices)
+		{
+			final ActorRef<Player.Protocol> tempPlayerRef = _players.getAgent(n);
+			tempPlayerRef.tell(new Player.RejectOfferMsg(
+					digitColliding, _self, _tableId, _memory.getIterationId()));
+		}
+		_memory.setBestOffer(0);
+		_memory.resetAcceptanceCount();
+	}
+
+	/**
+	 * Receives new offer from registered Player.
+	 * This action formally starts the negotiations.
+	 * May reply all Players with RejectOfferMsg.
+	 * @param msg	message representing Player's offer of digit to be inputted
+	 */
+	void onOffer(Table.OfferMsg msg) // offer
+	{
+		catchUpWithIteration(msg._iterationId);
+		if(_memory.didAlreadyFinished(msg._iterationId))
+			return;    // ignore late messages
+		reportProgress();
+
+		final int index = _players.getIndex(msg._playerId);
+		final ActorRef<Player.Protocol> player = _players.getAgent(index);
+		final int digit = msg._offeredDigit;
+
+		if (digit == 0) // Player cannot offer anything - Table must finish negotiations immediately
+		{
+			_memory.setBestOffer(0);
+			quitNegotiations();
+			return;
+		}
+
+		if (_memory.isDenied(digit)) // Digit causes conflict for some Player
+		{
+			_memory.clearOffer(index); // Lack of this line causes some rare bizarre exceptions
+			player.tell(new Player.RejectOfferMsg(digit, _self, _tableId, _memory.getIterationId()));
+			return;
+		}
+
+		// Add offer to memory
+		_memory.setOffer(index, digit, msg._digitWeight);
+
+		// Try choosing the best offer
+		attemptBestOffer();
+	}
+
+	/**
+	 * Receives requested weighs for given digits.
+	 * During this action Table analyses if there is a conflict or not and takes appropriate actions.
+	 * To prevent synchronization issues Table must check if weighed digit is up to date with Tables's one.
+	 * May reply all Players with RejectOfferMsg.
+	 * @param msg	message representing Player's requested weighs for given digits
+	 */
+	void onAdditionalInfo(Table.AdditionalInfoMsg msg) // specified
+	{
+		if(_memory.didAlreadyFinished(msg._iterationId))
+			return;    // ignore late messages
+		reportProgress();
+
+		final int index = _players.getIndex(msg._playerId);
+
+		for (int i = 0; i < msg._digits.length; ++i)
+		{
+			if (msg._collisions[i]) // Digit causes collision for the sender Player
+			{
+				withdrawAndInform(msg._digits[i]);
+			}
+			else
+			{
+				_memory.setWeight(index, msg._digits[i], msg._weights[i]);
+			}
+		}
+		_memory.decrementRequestCount(index);
+
+		// Try choosing the best offer
+		attemptBestOffer();
+	}
+
+	/**
+	 * Action on the Player's present offer withdrawal.
+	 * No reply.
+	 * @param msg	message with layer's withdrawal along with withdrawn digit
+	 */
+	void onWithdrawOffer(Table.WithdrawOfferMsg msg) // deny
+	{
+		if(_memory.didAlreadyFinished(msg._iterationId))
+			return;    // ignore late messages
+		reportProgress();
+
+		withdrawAndInform(msg._withdrawnDigit);
+	}
+
+	/**
+	 * Table collects accepting messages and finishes negotiations.
+	 * Table may also get declining message, what results in continuing the negotiations.
+	 * To prevent synchronization issues Table must check if msg._acceptedDigit is up to date with Table's one.
+	 * May reply to all Players with RejectOfferMsg or NegotiationsFinishedMsg.
+	 * @param msg	message with Player's acceptance / decline of present negotiations results.
+	 */
+	void onAcceptNegotiationsResults(Table.AcceptNegotiationsResultsMsg msg) // accept
+	{
+		if(_memory.didAlreadyFinished(msg._iterationId))
+			return;    // ignore late messages
+		reportProgress();
+
+		if (msg._acceptedDigit == _memory.getBestOffer())
+		{
+			_memory.incrementAcceptanceCount();
+			if (_memory.allAcceptances())
+			{
+				quitNegotiations();
+			}
+		}
+	}
+
+	/**
+	 * Tells the Teacher that negotiations of the Table go on, so that it is not considered dead.
+	 * Reports are throttled - the Teacher needs just one between two checks of Tables' liveness.
+	 */
+	private void reportProgress()
+	{
+		final long now = System.nanoTime();
+		if (now - _lastProgressReportNanos < PROGRESS_REPORT_NANOS)
+			return;
+		_lastProgressReportNanos = now;
+		_parent.tell(new Teacher.TableProgressMsg(_tableId, _memory.getIterationId()));
+	}
+
+	/**
+	 * Table resets it's memory lazily, on the first offer of a new iteration - the Teacher does not command it.
+	 * Only an offer may open an iteration, other messages from Players are replies within the present one.
+	 * Messages of past iterations are ignored later on, as they used to be.
+	 * @param iterationId	ID of the iteration the message belongs to
+	 */
+	private void catchUpWithIteration(int iterationId)
+	{
+		if (iterationId > _memory.getIterationId())
+			_memory.reset(iterationId);
+	}
+
+	/** Table is being informed that is not enough responsive - it wakes up its Players. */
+	void onWakeUp()
+	{
+		for(int i=0; i < _players.getAgentCount(); i++)
+		{
+			_players.getAgent(i).tell(new Player.WakeUpMsg());
+		}
+	}
+}
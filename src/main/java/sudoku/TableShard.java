@@ -0,0 +1,211 @@
+package sudoku;
+
+import akka.actor.typed.ActorRef;
+import akka.actor.typed.Behavior;
+import akka.actor.typed.PreRestart;
+import akka.actor.typed.javadsl.AbstractBehavior;
+import akka.actor.typed.javadsl.ActorContext;
+import akka.actor.typed.javadsl.Behaviors;
+import akka.actor.typed.javadsl.Receive;
+
+/**
+ * Agent hosting Tables of a whole group of cells (e.g. a row or a block) - an alternative to one Table agent per cell.
+ * It understands the Table protocol and routes messages to its Tables by their _tableId.
+ * A child of the Teacher agent.
+ */
+public class TableShard extends AbstractBehavior<Table.Protocol>
+{
+	/** Message for creating the TableShard. */
+	public static class CreateMsg
+	{
+		final int _shardId;
+		final int[] _tableIds;
+		final Position[] _tablePositions;
+		final int _sudokuSize;
+		final ActorRef<Teacher.Protocol> _replyTo;
+		public CreateMsg(
+				int shardId,
+				int[] tableIds,
+				Position[] tablePositions,
+				int sudokuSize,
+				ActorRef<Teacher.Protocol> replyTo)
+		{
+			if (tableIds.length != tablePositions.length)
+				throw new IllegalArgumentException("Each Table of the shard needs its position.");
+			this._shardId = shardId;
+			this._tableIds = tableIds;
+			this._tablePositions = tablePositions;
+			this._sudokuSize = sudokuSize;
+			this._replyTo = replyTo;
+		}
+		/** Positions of the Tables are taken from the shared Topology. */
+		public CreateMsg(int shardId, int[] tableIds, Topology topology, ActorRef<Teacher.Protocol> replyTo)
+		{
+			this(shardId, tableIds, getPositions(tableIds, topology), topology.getSize(), replyTo);
+		}
+
+		private static Position[] getPositions(int[] tableIds, Topology topology)
+		{
+			final Position[] positions = new Position[tableIds.length];
+			for (int i = 0; i < tableIds.length; ++i)
+				positions[i] = topology.getPosition(tableIds[i]);
+			return positions;
+		}
+	}
+
+	/** Custom exception thrown when a message cannot be routed to any Table of the shard. */
+	public static class UnknownTableException extends RuntimeException
+	{
+		final int _tableId;
+		public UnknownTableException(String msg, int tableId)
+		{
+			super(msg);
+			this._tableId = tableId;
+		}
+	}
+
+	/** ID of the shard. */
+	private final int _shardId;
+	/** Tables hosted by the shard, in order of creation. */
+	private final TableNegotiator[] _tables;
+	/** Tables hosted by the shard, indexed by (tableId - _firstTableId) - null for Tables of other agents. */
+	private final TableNegotiator[] _tablesById;
+	/** The lowest tableId of the shard. */
+	private final int _firstTableId;
+	/** The only Table of the shard, if there is exactly one - messages without a tableId are routed to it. */
+	private final TableNegotiator _onlyTable;
+
+	/**
+	 * Public method that calls private constructor.
+	 * Existence required by Akka.
+	 * @param createMsg 	message initialising the start of the agent
+	 * @return 				wrapped Behavior
+	 */
+	public static Behavior<Table.Protocol> create(CreateMsg createMsg)
+	{
+		return Behaviors.setup(context -> new TableShard(context, createMsg));
+	}
+
+	private TableShard(ActorContext<Table.Protocol> context, CreateMsg createMsg)
+	{
+		super(context);
+		_shardId = createMsg._shardId;
+		final int[] tableIds = createMsg._tableIds;
+		int firstTableId = Integer.MAX_VALUE, lastTableId = Integer.MIN_VALUE;
+		for (int tableId : tableIds)
+		{
+			firstTableId = Math.min(firstTableId, tableId);
+			lastTableId = Math.max(lastTableId, tableId);
+		}
+		_firstTableId = firstTableId;
+		_tables = new TableNegotiator[tableIds.length];
+		// Tables of a row are adjacent, those of a block span rank rows - the range stays small either way
+		_tablesById = new TableNegotiator[tableIds.length == 0 ? 0 : lastTableId - firstTableId + 1];
+		for (int i = 0; i < tableIds.length; ++i)
+		{
+			_tables[i] = new TableNegotiator(
+					tableIds[i],
+					createMsg._tablePositions[i],
+					createMsg._sudokuSize,
+					context.getSelf(),
+					createMsg._replyTo);
+			_tablesById[tableIds[i] - _firstTableId] = _tables[i];
+		}
+		_onlyTable = (_tables.length == 1) ? _tables[0] : null;
+	}
+
+	/**
+	 * Main method controlling incoming messages.
+	 * Existence required by Akka.
+	 * @return	wrapped Behavior
+	 */
+	@Override
+	public Receive<Table.Protocol> createReceive()
+	{
+		return newReceiveBuilder()
+				.onMessage(Table.RegisterPlayerMsg.class, this::onRegisterPlayer)
+				.onMessage(Table.OfferMsg.class, this::onOffer)
+				.onMessage(Table.AdditionalInfoMsg.class, this::onAdditionalInfo)
+				.onMessage(Table.WithdrawOfferMsg.class, this::onWithdrawOffer)
+				.onMessage(Table.AcceptNegotiationsResultsMsg.class, this::onAcceptNegotiationsResults)
+				.onMessage(Table.WakeUpMsg.class, this::onWakeUp)
+				.onMessage(Table.PlayerIsDeadMsg.class, this::onPlayerIsDead)
+				.onSignal(PreRestart.class, signal -> onPreRestart())
+				.build();
+	}
+
+	/**
+	 * Finds the Table the message is addressed to.
+	 * @param tableId	global ID of the Table
+	 * @return			Table hosted by the shard
+	 */
+	private TableNegotiator getTable(int tableId)
+	{
+		final int index = tableId - _firstTableId;
+		final TableNegotiator table = (tableId == Table.UNKNOWN_TABLE_ID) ? _onlyTable
+				: (index >= 0 && index < _tablesById.length) ? _tablesById[index] : null;
+		if (table == null)
+			throw new UnknownTableException(
+					"Table (tableId: " + tableId + ") is not hosted by the shard (shardId: " + _shardId + ").",
+					tableId);
+		return table;
+	}
+
+	private Behavior<Table.Protocol> onRegisterPlayer(Table.RegisterPlayerMsg msg)
+	{
+		getTable(msg._tableId).onRegisterPlayer(msg);
+		return this;
+	}
+
+	private Behavior<Table.Protocol> onOffer(Table.OfferMsg msg)
+	{
+		getTable(msg._tableId).onOffer(msg);
+		return this;
+	}
+
+	private Behavior<Table.Protocol> onAdditionalInfo(Table.AdditionalInfoMsg msg)
+	{
+		getTable(msg._tableId).onAdditionalInfo(msg);
+		return this;
+	}
+
+	private Behavior<Table.Protocol> onWithdrawOffer(Table.WithdrawOfferMsg msg)
+	{
+		getTable(msg._tableId).onWithdrawOffer(msg);
+		return this;
+	}
+
+	private Behavior<Table.Protocol> onAcceptNegotiationsResults(Table.AcceptNegotiationsResultsMsg msg)
+	{
+		getTable(msg._tableId).onAcceptNegotiationsResults(msg);
+		return this;
+	}
+
+	/**
+	 * The shard is being informed that is not enough responsive - all its Tables wake up their Players.
+	 * @param msg	message from the Teacher
+	 * @return		wrapped Behavior
+	 */
+	private Behavior<Table.Protocol> onWakeUp(Table.WakeUpMsg msg)
+	{
+		for (TableNegotiator table : _tables)
+			table.onWakeUp();
+		return this;
+	}
+
+	private Behavior<Table.Protocol> onPlayerIsDead(Table.PlayerIsDeadMsg msg)
+	{
+		return this;
+	}
+
+	/**
+	 * Handler of PreRestart signal.
+	 * Expected just before restarting the agent.
+	 * @return 		wrapped Behavior
+	 */
+	private TableShard onPreRestart()
+	{
+		getContext().getLog().info("TableShard #{} will be restarted.", _shardId);
+		return this;
+	}
+}
@@ -7,6 +7,8 @@ import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
 
 import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
 
 /**
  * Agent that interprets development of the playing agents and rewards them. Singleton.
@@ -17,18 +19,92 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	/** Protocol interface for input messages. */
 	public interface Protocol {}
 
+	/**
+	 * Definition of hosting Tables by agents.
+	 * CELL - one Table agent per cell of the Sudoku
+	 * ROW - one TableShard agent per row of the Sudoku
+	 * BLOCK - one TableShard agent per block (square) of the Sudoku
+	 */
+	public enum TableGrouping
+	{
+		CELL,
+		ROW,
+		BLOCK
+	}
+
+	/**
+	 * Optional settings of the Teacher. Each of them has a default, so only the ones that differ need to be given:
+	 * Teacher.Settings.DEFAULT.withRiddleId(riddleId).withTableGrouping(TableGrouping.ROW)
+	 */
+	public static class Settings
+	{
+		public static final Settings DEFAULT = new Settings(0L, null, TableGrouping.CELL, null, null);
+
+		/** ID of the riddle the Teacher is solving, returned with its solutions. */
+		public final long _riddleId;
+		/** Counter of messages received by the Teacher and all its children. If null, messages are not counted. */
+		public final LongAdder _messageCounter;
+		public final TableGrouping _tableGrouping;
+		/** Policy of rewarding Players at the end of big iterations. If null, EmptyFieldsRewardPolicy is used. */
+		public final RewardPolicy _rewardPolicy;
+		/** Settings of the adaptive iteration timeout. If null, they are read from the ActorSystem's configuration. */
+		public final TimerManager.TimeoutSettings _timeoutSettings;
+		private Settings(
+				long riddleId,
+				LongAdder messageCounter,
+				TableGrouping tableGrouping,
+				RewardPolicy rewardPolicy,
+				TimerManager.TimeoutSettings timeoutSettings)
+		{
+			if (tableGrouping == null)
+				throw new IllegalArgumentException("Table grouping must be given.");
+			this._riddleId = riddleId;
+			this._messageCounter = messageCounter;
+			this._tableGrouping = tableGrouping;
+			this._rewardPolicy = rewardPolicy;
+			this._timeoutSettings = timeoutSettings;
+		}
+		public Settings withRiddleId(long riddleId)
+		{
+			return new Settings(riddleId, _messageCounter, _tableGrouping, _rewardPolicy, _timeoutSettings);
+		}
+		public Settings withMessageCounter(LongAdder messageCounter)
+		{
+			return new Settings(_riddleId, messageCounter, _tableGrouping, _rewardPolicy, _timeoutSettings);
+		}
+		public Settings withTableGrouping(TableGrouping tableGrouping)
+		{
+			return new Settings(_riddleId, _messageCounter, tableGrouping, _rewardPolicy, _timeoutSettings);
+		}
+		public Settings withRewardPolicy(RewardPolicy rewardPolicy)
+		{
+			return new Settings(_riddleId, _messageCounter, _tableGrouping, rewardPolicy, _timeoutSettings);
+		}
+		public Settings withTimeoutSettings(TimerManager.TimeoutSettings timeoutSettings)
+		{
+			return new Settings(_riddleId, _messageCounter, _tableGrouping, _rewardPolicy, timeoutSettings);
+		}
+	}
+
 	/** Message for creating the Teacher. */
 	public static class CreateMsg implements Protocol
 	{
 		final String _name;
 		final Sudoku _sudoku;
 		final ActorRef<SudokuSupervisor.Protocol> _replyTo;
+		final Settings _settings;
 
 		public CreateMsg(String name, Sudoku sudoku, ActorRef<SudokuSupervisor.Protocol> replyTo)
+		{
+			this(name, sudoku, replyTo, Settings.DEFAULT);
+		}
+
+		public CreateMsg(String name, Sudoku sudoku, ActorRef<SudokuSupervisor.Protocol> replyTo, Settings settings)
 		{
 			this._name = name;
 			this._sudoku = sudoku;
 			this._replyTo = replyTo;
+			this._settings = settings;
 		}
 	}
 
@@ -75,17 +151,29 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 
 	/**
 	 * Reply for a request for memorised Digits and Masks by the Player.
-	 * Memory is represented by a HashMap, where a key is (global) tableId, and value is a Pair of Digit and Mask.
+	 * Memory is represented by parallel arrays: (global) tableIds and their Digits,
+	 * and a bitset of Masks indexed the same way.
 	 */
 	public static class MemorisedDigitsMsg implements Protocol, SharedProtocols.InspectionProtocol
 	{
-		public final Map<Integer,Pair<Integer,Boolean>> _memorisedDigits;
+		public final int[] _tableIds;
+		public final int[] _digits;
+		public final long[] _masks;
 		public final int _requestedPlayerId;
-		public MemorisedDigitsMsg(Map<Integer,Pair<Integer,Boolean>> memorisedDigits, int requestedPlayerId)
+		public MemorisedDigitsMsg(int[] tableIds, int[] digits, long[] masks, int requestedPlayerId)
 		{
-			this._memorisedDigits = memorisedDigits;
+			if (tableIds.length != digits.length || masks.length < (tableIds.length + 63) >>> 6)
+				throw new IllegalArgumentException("Each memorised Digit needs its tableId and Mask.");
+			this._tableIds = tableIds;
+			this._digits = digits;
+			this._masks = masks;
 			this._requestedPlayerId = requestedPlayerId;
 		}
+
+		public boolean getMask(int i)
+		{
+			return (_masks[i >>> 6] & (1L << i)) != 0;
+		}
 	}
 
 	/** Message commanding the Teacher to inspect it's Players' digits. */
@@ -98,31 +186,25 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 		}
 	}
 
-	/** The agent reports to the Teacher that it had performed reset of it's memory. */
-	public static class PerformedMemoryResetMsg implements Protocol, SharedProtocols.NewIterationProtocol
+	/** Message for monitoring, asking for the present iteration timeout of the Teacher's TimerManager. */
+	public static class GetIterationTimeoutMsg implements Protocol, SharedProtocols.InspectionProtocol
 	{
-		public final int _id;
-		public PerformedMemoryResetMsg(int id)
+		public final ActorRef<TimerManager.IterationTimeoutInfoMsg> _replyTo;
+		public GetIterationTimeoutMsg(ActorRef<TimerManager.IterationTimeoutInfoMsg> replyTo)
 		{
-			this._id = id;
-		}
-	}
-
-	/** The Table's version of PerformedMemoryResetMsg. */
-	public static class TablePerformedMemoryResetMsg extends PerformedMemoryResetMsg
-	{
-		public TablePerformedMemoryResetMsg(int id)
-		{
-			super(id);
+			this._replyTo = replyTo;
 		}
 	}
 
-	/** The Player's version of PerformedMemoryResetMsg. */
-	public static class PlayerPerformedMemoryResetMsg extends PerformedMemoryResetMsg
+	/** Message reporting that a Table still negotiates - sent once in a while, on offers and replies of Players. */
+	public static class TableProgressMsg implements Protocol
 	{
-		public PlayerPerformedMemoryResetMsg(int id)
+		public final int _tableId;
+		public final int _iterationId;
+		public TableProgressMsg(int tableId, int iterationId)
 		{
-			super(id);
+			this._tableId = tableId;
+			this._iterationId = iterationId;
 		}
 	}
 
@@ -132,11 +214,13 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 		public final int _digit;
 		public final Position _position;
 		public final int _tableId;
-		public TableFinishedNegotiationsMsg(int digit, Position position, int tableId)
+		public final int _iterationId;
+		public TableFinishedNegotiationsMsg(int digit, Position position, int tableId, int iterationId)
 		{
 			this._digit = digit;
 			this._position = position;
 			this._tableId = tableId;
+			this._iterationId = iterationId;
 		}
 	}
 
@@ -154,9 +238,11 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	public static class TablesAreNotRespondingMsg implements Protocol, SharedProtocols.ValidationProtocol
 	{
 		public final int[] _tableIds;
-		public TablesAreNotRespondingMsg(int[] tableIds)
+		public final int _iterationId;
+		public TablesAreNotRespondingMsg(int[] tableIds, int iterationId)
 		{
 			this._tableIds = tableIds;
+			this._iterationId = iterationId;
 		}
 	}
 
@@ -175,19 +261,45 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	private final Sudoku _sudoku;
 	/** Parent agent */
 	private final ActorRef<SudokuSupervisor.Protocol> _parent;
-	/** Data structure for storing all Players - child agents. */
-	private Map<Integer, ActorRef<Player.Protocol>> _players;
-	/** Data structure for storing all Tables - child agents. */
-	private Map<Integer, ActorRef<Table.Protocol>> _tables;
+	/** ID of the riddle being solved, reported back to the parent with every solution. */
+	private final long _riddleId;
+	/** Number of solutions returned to the parent so far. */
+	private int _returnedSolutionsCount;
+	/** Counter of messages received by the Teacher and all its children. If null, messages are not counted. */
+	private final LongAdder _messageCounter;
+	/** Data structure for storing all Players - child agents, indexed by playerId. */
+	private List<ActorRef<Player.Protocol>> _players;
+	/** Data structure for storing all Tables - agents hosting them, indexed by tableId (a TableShard hosts many Tables). */
+	private List<ActorRef<Table.Protocol>> _tables;
+	/** Child agent forwarding broadcast messages to all Players. */
+	private ActorRef<Player.Protocol> _playersBroadcaster;
+	/** Hosting Tables by agents. */
+	private final TableGrouping _tableGrouping;
+	/** Index of fields (Tables) of all Players. */
+	private final Topology _topology;
+	/** Policy of rewarding Players at the end of big iterations. */
+	private final RewardPolicy _rewardPolicy;
+	/** Rewards of all Players computed by the policy, indexed by playerId. */
+	private final float[] _playerRewards;
 	/** Data structure for counting acknowledgement messages from Players and Tables. */
 	private TeacherMemory _memory;
-	/** Sudoku solution from the previous iteration */
-	private Sudoku _prevSudoku;
-	/** HashMap for inspected digits. Key: tableId, Value: inspectedDigit. */
-	private Map<Integer, Integer> _inspectedDigits;
+	/** ID of the present iteration (small or big) - agents reset their memories on seeing a new one. */
+	private int _iterationId;
+	/** Behaviors of Tables by tableId, replacing the negotiating ones in tests. If null, Tables are spawned. */
+	private final IntFunction<Behavior<Table.Protocol>> _tableFactory;
+	/** Hash of the Sudoku solution from the previous iteration */
+	private long _prevSolutionHash;
+	/** Board of inspected digits, indexed by tableId - preallocated, so that inspections can be frequent. */
+	private final int[] _inspectedDigits;
+	/** Bitset of Tables whose digits were already inspected, indexed by tableId. */
+	private final long[] _inspectedTables;
+	/** Number of Tables whose digits were already inspected. */
+	private int _inspectedTablesCount;
+	/** Buffer for ids of Tables that did not finish before the iteration timeout. */
+	private final int[] _timedOutTableIds;
 	/** Inspector's reference. */
 	private ActorRef<Sudoku> _inspector;
-	/** Teacher's own Timer. */
+	/** Teacher's own TimerManager. */
 	private ActorRef<TimerManager.Protocol> _timerManager;
 
 	/**
@@ -198,34 +310,76 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	 */
 	public static Behavior<Protocol> create(CreateMsg createMsg)
 	{
-		return Behaviors.setup(context -> new Teacher(context, createMsg));
+		return create(createMsg, null);
 	}
 
-	private Teacher(ActorContext<Protocol> context, CreateMsg createMsg)
+	/**
+	 * Creates the Teacher with Tables replaced by given behaviors - for testing the Teacher alone.
+	 * @param createMsg 	message initialising the start of the agent, with TableGrouping.CELL
+	 * @param tableFactory	behaviors of Tables by tableId; if null, negotiating Tables are spawned
+	 * @return 		wrapped Behavior
+	 */
+	static Behavior<Protocol> create(CreateMsg createMsg, IntFunction<Behavior<Table.Protocol>> tableFactory)
+	{
+		if (tableFactory != null && createMsg._settings._tableGrouping != TableGrouping.CELL)
+			throw new IllegalArgumentException("Only Tables of single cells can be replaced.");
+		return MessageCounter.count(
+				Behaviors.setup(context -> new Teacher(context, createMsg, tableFactory)),
+				Protocol.class,
+				createMsg._settings._messageCounter);
+	}
+
+	private Teacher(
+			ActorContext<Protocol> context,
+			CreateMsg createMsg,
+			IntFunction<Behavior<Table.Protocol>> tableFactory)
 	{
 		super(context);
 		this._sudoku = new Sudoku(createMsg._sudoku);
 		this._parent = createMsg._replyTo;
-		this._players = new HashMap<>();
-		this._tables = new HashMap<>();
+		this._riddleId = createMsg._settings._riddleId;
+		this._returnedSolutionsCount = 0;
+		this._messageCounter = createMsg._settings._messageCounter;
+		this._players = new ArrayList<>(createMsg._sudoku.getPlayerCount());
+		this._tables = new ArrayList<>(createMsg._sudoku.getTableCount());
+		this._tableGrouping = createMsg._settings._tableGrouping;
+		this._tableFactory = tableFactory;
+		this._topology = Topology.of(_sudoku.getRank());
+		this._rewardPolicy = (createMsg._settings._rewardPolicy != null)
+				? createMsg._settings._rewardPolicy
+				: new EmptyFieldsRewardPolicy();
+		this._playerRewards = new float[_sudoku.getPlayerCount()];
 		this._memory = new TeacherMemory(
-				_sudoku.getPlayerCount(),
 				_sudoku.getTableCount(),
-				getNormalTableIds(this._sudoku)
+				_sudoku
 		);
-		this._prevSudoku = new Sudoku(this._sudoku);
-		this._inspectedDigits = new HashMap<>();
+		this._timedOutTableIds = new int[_sudoku.getTableCount()];
+		this._iterationId = 0;
+		this._prevSolutionHash = this._sudoku.getBoardHash();
+		this._inspectedDigits = new int[_sudoku.getTableCount()];
+		this._inspectedTables = new long[(_sudoku.getTableCount() + 63) >>> 6];
+		this._inspectedTablesCount = 0;
 		this._timerManager = getContext().spawn(
 				Behaviors.supervise(
-						TimerManager.create(new TimerManager.CreateMsg(getContext().getSelf()))
-				).onFailure(SupervisorStrategy.restart()), "Teachers-TimerManager");
+						MessageCounter.count(
+								TimerManager.create(new TimerManager.CreateMsg(
+										getContext().getSelf(),
+										(createMsg._settings._timeoutSettings != null)
+												? createMsg._settings._timeoutSettings
+												: TimerManager.TimeoutSettings.fromConfig(
+														getContext().getSystem().settings().config()))),
+								TimerManager.Protocol.class,
+								createMsg._settings._messageCounter)
+				).onFailure(SupervisorStrategy.restart()),
+				"Teachers-TimerManager",
+				DispatcherLayout.control(getContext().getSystem()));
 		context.getLog().info("Teacher created");			// left for debugging only
 
 		spawnPlayers();
 		spawnTables();
+		spawnPlayersBroadcaster();
 		registerAgentsOnSetup();
-		prepareForNewBigIterationAndRun();
-		_timerManager.tell(new TimerManager.NewIterationStartedMsg(3000));
+		_timerManager.tell(new TimerManager.NewIterationStartedMsg());
 	}
 
 	/**
@@ -238,10 +392,11 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	{
 		return newReceiveBuilder()
 				.onMessage(SimulateCrashMsg.class, this::onSimulateCrash)
+				.onMessage(RegisteredMsg.class, this::onRegistered)
 				.onMessage(InspectChildDigitsMsg.class, this::onInspectChildDigits)
+				.onMessage(GetIterationTimeoutMsg.class, this::onGetIterationTimeout)
 				.onMessage(MemorisedDigitsMsg.class, this::onMemorisedDigits)
-				.onMessage(TablePerformedMemoryResetMsg.class, this::onTablePerformedMemoryReset)
-				.onMessage(PlayerPerformedMemoryResetMsg.class, this::onPlayerPerformedMemoryReset)
+				.onMessage(TableProgressMsg.class, this::onTableProgress)
 				.onMessage(TableFinishedNegotiationsMsg.class, this::onTableFinishedNegotiations)
 				.onMessage(RewardReceivedMsg.class, this::onRewardReceived)
 				.onMessage(TablesAreNotRespondingMsg.class, this::onTablesAreNotResponding)
@@ -271,65 +426,71 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	private Behavior<Protocol> onInspectChildDigits(InspectChildDigitsMsg msg)
 	{
 		ActorRef<Player.Protocol> player;
-		_inspectedDigits.clear();
+		Arrays.fill(_inspectedTables, 0L);
+		_inspectedTablesCount = 0;
 		_inspector = msg._replyTo;
 
 		for(int playerId = 0; playerId < _sudoku.getPlayerCount(); playerId++)
 		{
 			player = _players.get(playerId);
-			player.tell(new Player.MemorisedDigitsRequestMsg(getContext().getSelf(), getTableIdsForPlayerId(playerId)));
+			player.tell(new Player.MemorisedDigitsRequestMsg(getContext().getSelf(), _topology.getTableIds(playerId)));
 		}
 		return this;
 	}
 
 	/**
-	 * Gathers received MemorisedDigitsMsg from requested Players.
+	 * Forwards the query of the iteration timeout to the TimerManager, which replies directly.
 	 *
-	 * @param msg	inspection results
+	 * @param msg	query for monitoring
 	 * @return 		wrapped Behavior
 	 */
-	private Behavior<Protocol> onMemorisedDigits(MemorisedDigitsMsg msg)
+	private Behavior<Protocol> onGetIterationTimeout(GetIterationTimeoutMsg msg)
 	{
-		int memorisedDigit;
-		for(int tableId : msg._memorisedDigits.keySet())
-		{
-			memorisedDigit = msg._memorisedDigits.get(tableId).first;
-			if(_inspectedDigits.containsKey(tableId) && _inspectedDigits.get(tableId) != memorisedDigit)
-				throw new RuntimeException("Inspected digits differs on the same Position.");
-
-			_inspectedDigits.put(tableId, memorisedDigit);
-		}
-
-		if(_inspectedDigits.keySet().size() == _tables.keySet().size())		// if it is the last msg to be received
-			_inspector.tell(prepareInspectionResults());
-
+		_timerManager.tell(new TimerManager.GetIterationTimeoutMsg(msg._replyTo));
 		return this;
 	}
 
 	/**
-	 * Teacher collects messages reporting it's Tables' memory being reset.
-	 * @param msg	reporting message
+	 * Gathers received MemorisedDigitsMsg from requested Players.
+	 *
+	 * @param msg	inspection results
 	 * @return 		wrapped Behavior
 	 */
-	private Behavior<Protocol> onTablePerformedMemoryReset(TablePerformedMemoryResetMsg msg)
+	private Behavior<Protocol> onMemorisedDigits(MemorisedDigitsMsg msg)
 	{
-		if (_memory.addTableReset())
+		int tableId, memorisedDigit;
+		for(int i = 0; i < msg._tableIds.length; ++i)
 		{
-			startNewIteration();
+			tableId = msg._tableIds[i];
+			memorisedDigit = msg._digits[i];
+			if((_inspectedTables[tableId >>> 6] & (1L << tableId)) != 0)
+			{
+				if(_inspectedDigits[tableId] != memorisedDigit)
+					throw new RuntimeException("Inspected digits differs on the same Position.");
+				continue;
+			}
+			_inspectedTables[tableId >>> 6] |= 1L << tableId;
+			_inspectedDigits[tableId] = memorisedDigit;
+			++_inspectedTablesCount;
 		}
+
+		if(_inspectedTablesCount == _tables.size())		// if it is the last msg to be received
+			_inspector.tell(prepareInspectionResults());
+
 		return this;
 	}
 
 	/**
-	 * Teacher collects messages reporting it's Players' memory being reset.
-	 * @param msg	reporting message
+	 * Teacher collects acknowledgements of registering Players and Tables to each other during startup.
+	 * When all agents are registered, the first (big) iteration is started.
+	 * @param msg	acknowledgement of registering an agent
 	 * @return 		wrapped Behavior
 	 */
-	private Behavior<Protocol> onPlayerPerformedMemoryReset(PlayerPerformedMemoryResetMsg msg)
+	private Behavior<Protocol> onRegistered(RegisteredMsg msg)
 	{
-		if (_memory.addPlayerReset())
+		if (_memory.addRegistration())
 		{
-			startNewIteration();
+			startNewIteration(true);
 		}
 		return this;
 	}
@@ -338,38 +499,61 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	 * Teacher collects messages reporting negotiations' solutions.
 	 * When collected last message - it should call prepareForNewIterationAndRun and returnNewSolution.
 	 * Note that a solution may be zero - meaning no consensus could be made with the Players.
+	 * Late messages from past iterations (e.g. ones that timed out) are ignored.
 	 * @param msg	message containing solution - a digit for a specific Position in Sudoku riddle
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<Protocol> onTableFinishedNegotiations(TableFinishedNegotiationsMsg msg)
 	{
+		if (msg._iterationId != _iterationId)
+			return this;
 		_sudoku.insertDigit(msg._position.x, msg._position.y, msg._digit);
 		afterTableFinished(msg._tableId);
 		return this;
 	}
 
 	/**
-	 * Teacher collects messages reporting receiving rewards.
-	 * When collected last message - it is ready for new big iteration.
+	 * Teacher marks the Table as alive until the next liveness check.
+	 * @param msg	report of progress of the Table
+	 * @return 		wrapped Behavior
+	 */
+	private Behavior<Protocol> onTableProgress(TableProgressMsg msg)
+	{
+		if (msg._iterationId == _iterationId)
+			_memory.addTableProgressed(msg._tableId);
+		return this;
+	}
+
+	/**
+	 * Teacher ignores messages reporting receiving rewards.
+	 * There is no need to wait for them - Players start a new big iteration on receiving their rewards.
 	 * @param msg	message confirming reception of a reward
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<Protocol> onRewardReceived(RewardReceivedMsg msg)
 	{
-		if (_memory.addPlayerRewarded())
-		{
-			prepareForNewBigIterationAndRun();
-		}
 		return this;
 	}
 
 	/**
-	 * When Teacher got TablesAreNotRespondingMsg, mentioned Tables are treated dead.
+	 * When Teacher got TablesAreNotRespondingMsg, mentioned Tables are treated dead - unless they reported progress
+	 * since the check was requested. If the iteration still waits for some Tables, they are checked again.
 	 * @param msg	warning message
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<Protocol> onTablesAreNotResponding(TablesAreNotRespondingMsg msg)
 	{
+		if (msg._iterationId != _iterationId)
+			return this;	// the iteration has already finished
+		final int awaitedCount = _memory.getTablesNotFinishedCount();
+		final int remainingCount = _memory.setTableIdsConsideredDead(msg._tableIds);
+		if (remainingCount != awaitedCount)
+			getContext().getLog().info("{} Tables stopped making progress in the iteration #{}.",
+					awaitedCount - remainingCount, _iterationId);
+		if (remainingCount == 0)
+			returnNewSolution();
+		else
+			remindToCheckTables();
 		return this;
 	}
 
@@ -384,8 +568,9 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 		System.out.println();
 		System.out.println();
 
-		for(int tableId : _memory.getTablesNotFinished())
-			afterTableFinished(tableId);
+		final int timedOutCount = _memory.getTablesNotFinished(_timedOutTableIds);
+		for(int i = 0; i < timedOutCount; ++i)
+			afterTableFinished(_timedOutTableIds[i]);
 
 		return this;
 	}
@@ -421,61 +606,105 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 		{
 			ActorRef<Player.Protocol> newPlayer = getContext().spawn(
 					//Behaviors.supervise(		TODO Kamil - decide if supervise children
-					Player.create(new Player.CreateMsg(playerId, sudokuSize, getContext().getSelf())
-					)
+					MessageCounter.count(
+							Player.create(new Player.CreateMsg(playerId, sudokuSize, getContext().getSelf())),
+							Player.Protocol.class,
+							_messageCounter)
 					//).onFailure(SupervisorStrategy.restart())
 					, "player-" + playerId
+					, DispatcherLayout.negotiation(getContext().getSystem())
 			);
-			_players.put(playerId, newPlayer);
+			_players.add(newPlayer);
 		}
 	}
 
-	/** Action of spawning all child Tables agents. */
+	/** Action of spawning all child Tables agents - or TableShards hosting them, depending on the grouping. */
 	private void  spawnTables()
 	{
-		int tableId = 0, x, y;
-		final int sudokuSize = _sudoku.getSize();
-		for(y = 0; y < sudokuSize; ++y)
+		if (_tableGrouping != TableGrouping.CELL)
 		{
-			for(x = 0; x < sudokuSize; ++x, ++tableId)
-			{
-				ActorRef<Table.Protocol> newTable = getContext().spawn(
-						// Behaviors.supervise(		// TODO Kamil - decide if supervise children
-						Table.create(new Table.CreateMsg(
-								tableId, new Position(x, y), sudokuSize, getContext().getSelf()))
-						// ).onFailure(SupervisorStrategy.restart())
-						, "table-" + tableId
-				);
-				_tables.put(tableId, newTable);
-			}
+			spawnTableShards();
+			return;
+		}
+		final int sudokuSize = _sudoku.getSize();
+		for(int tableId = 0; tableId < _topology.getTableCount(); ++tableId)
+		{
+			final Behavior<Table.Protocol> table = (_tableFactory != null)
+					? _tableFactory.apply(tableId)
+					: Table.create(new Table.CreateMsg(
+							tableId, _topology.getPosition(tableId), sudokuSize, getContext().getSelf()));
+			ActorRef<Table.Protocol> newTable = getContext().spawn(
+					// Behaviors.supervise(		// TODO Kamil - decide if supervise children
+					MessageCounter.count(table, Table.Protocol.class, _messageCounter)
+					// ).onFailure(SupervisorStrategy.restart())
+					, "table-" + tableId
+					, DispatcherLayout.negotiation(getContext().getSystem())
+			);
+			_tables.add(newTable);
+		}
+	}
+
+	/** Action of spawning TableShards, each hosting Tables of a whole row or block - just like a Player. */
+	private void spawnTableShards()
+	{
+		final int sudokuSize = _sudoku.getSize();
+		_tables.addAll(Collections.nCopies(_sudoku.getTableCount(), null));
+		final int firstPlayerId = (_tableGrouping == TableGrouping.ROW) ? sudokuSize : 2 * sudokuSize;
+		for(int shardId = 0; shardId < sudokuSize; ++shardId)
+		{
+			final int[] tableIds = _topology.getTableIds(firstPlayerId + shardId);
+			ActorRef<Table.Protocol> newShard = getContext().spawn(
+					MessageCounter.count(
+							TableShard.create(new TableShard.CreateMsg(
+									shardId, tableIds, _topology, getContext().getSelf())),
+							Table.Protocol.class,
+							_messageCounter)
+					, "table-shard-" + shardId
+					, DispatcherLayout.negotiation(getContext().getSystem())
+			);
+			for(int tableId : tableIds)
+				_tables.set(tableId, newShard);
 		}
 	}
 
 	/**
-	 * For given Player, registers to it the Table assigned to given position: (x,y).
+	 * Action of spawning the Broadcaster of all Players.
+	 * Thanks to it, consents cost the Teacher a single message each, instead of one per Player.
+	 * Tables need no broadcasts - they reset lazily, on the first offer of a new iteration.
+	 */
+	private void spawnPlayersBroadcaster()
+	{
+		_playersBroadcaster = getContext().spawn(
+				MessageCounter.count(Broadcaster.create(_players), Player.Protocol.class, _messageCounter),
+				"players-broadcaster",
+				DispatcherLayout.negotiation(getContext().getSystem())
+		);
+	}
+
+	/**
+	 * For given Player, registers to it the given Table.
 	 * Also, to the very same Table registers given Player.
 	 * On registration on the particular Position, there is also passed to the Player a particular piece of Sudoku.
 	 * @param playerRef		a reference to the Player to whom a Table should be registered (and vice versa)
 	 * @param playerId		ID of the Player
-	 * @param sudokuSize	a size of the Sudoku
-	 * @param x				x coordinate of the Position of the Table
-	 * @param y				y coordinate of the Position of the Table
+	 * @param tableId		ID of the Table
 	 */
-	private void registerMutually(ActorRef<Player.Protocol> playerRef, int playerId, int sudokuSize, int x, int y)
+	private void registerMutually(ActorRef<Player.Protocol> playerRef, int playerId, int tableId)
 	{
-		final int tableId = sudokuSize * y + x;
+		final Position tablePos = _topology.getPosition(tableId);
 		ActorRef<Table.Protocol> tableRef = _tables.get(tableId);
 		playerRef.tell(new Player.RegisterTableMsg(
 				tableRef,
 				tableId,
-				_sudoku.getDigit(x, y),
-				_sudoku.getMask(x, y),
+				_sudoku.getDigit(tablePos.x, tablePos.y),
+				_sudoku.getMask(tablePos.x, tablePos.y),
 				getContext().getSelf()
 				));
 		tableRef.tell(new Table.RegisterPlayerMsg(
 				playerRef,
 				playerId,
-				getContext().getSelf()
+				getContext().getSelf(),
+				tableId
 				));
 	}
 
@@ -485,84 +714,14 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	 */
 	private void registerAgentsOnSetup()
 	{
-		final int sudokuSize = _sudoku.getSize();
-		int playerId = 0;
-		ActorRef<Player.Protocol> playerRef;
-
-		// Register columns
-		for(int x = 0; x < sudokuSize; ++x, ++playerId)
-		{
-			playerRef = _players.get(playerId);
-			for(int y = 0; y < sudokuSize; ++y)
-			{
-				registerMutually(playerRef, playerId, sudokuSize, x, y);
-			}
-		}
-		// Register rows
-		for(int y = 0; y < sudokuSize; ++y, ++playerId)
+		for(int playerId = 0; playerId < _topology.getPlayerCount(); ++playerId)
 		{
-			playerRef = _players.get(playerId);
-			for(int x = 0; x < sudokuSize; ++x)
+			final ActorRef<Player.Protocol> playerRef = _players.get(playerId);
+			for(int tableId : _topology.getTableIds(playerId))
 			{
-				registerMutually(playerRef, playerId, sudokuSize, x, y);
+				registerMutually(playerRef, playerId, tableId);
 			}
 		}
-		// Register blocks (squares)
-		final int sudokuRank = _sudoku.getRank();
-		for(int y = 0; y < sudokuSize; y += sudokuRank)
-		{
-			for(int x = 0; x < sudokuSize; x += sudokuRank, ++playerId)
-			{
-				playerRef = _players.get(playerId);
-				for(int j = 0; j < sudokuRank; ++j)
-				{
-					for(int i = 0; i < sudokuRank; ++i)
-					{
-						registerMutually(playerRef, playerId, sudokuSize, x + i, y + j);
-					}
-				}
-			}
-		}
-	}
-
-	/**
-	 * Generates array of tableIds for given playerId.
-	 * @param playerId	(global) ID of a Player
-	 * @return			array of IDs of Tables matching to given Player
-	 */
-	private int[] getTableIdsForPlayerId(int playerId)
-	{
-		int i, tableId;
-		final int sudokuSize = _sudoku.getSize(), sudokuRank = _sudoku.getRank();
-		int[] tableIDs = new int[sudokuSize];
-
-		// Player is a Column
-		if(playerId >= 0 && playerId < sudokuSize)
-		{
-			for (i = 0, tableId = playerId; i < sudokuSize; i++, tableId += sudokuSize)
-				tableIDs[i] = tableId;
-		}
-		// Row
-		else if(playerId >= sudokuSize && playerId < 2 * sudokuSize)
-		{
-			for (i = 0, tableId = (playerId - sudokuSize) * sudokuSize; i < sudokuSize; i++, tableId += 1)
-				tableIDs[i] = tableId;
-		}
-		// Block
-		else if(playerId >= 2 * sudokuSize && playerId < 3 * sudokuSize)
-		{
-			int r = (playerId - 2* sudokuSize) % sudokuRank;
-			int initTableId = (playerId - 2* sudokuSize - r) * sudokuSize + r * sudokuRank;
-
-			for (i = 0, tableId = initTableId; i < sudokuRank; i++, tableId += sudokuSize)
-				for (int j = 0; j < sudokuRank; j++)
-					tableIDs[sudokuRank * i + j] = tableId + j;
-		}
-		else
-		{
-			throw new RuntimeException("Given playerId is out of range.");
-		}
-		return tableIDs;
 	}
 
 	/**
@@ -572,160 +731,58 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	private Sudoku prepareInspectionResults()
 	{
 		Sudoku results = new Sudoku(_sudoku.getRank());
-		int[][] inspectionResults = new int[_sudoku.getSize()][_sudoku.getSize()];
-		int digit;
-
-		for(int tableId = 0, x = 0, y = -1; tableId < _sudoku.getSize() * _sudoku.getSize(); ++tableId, ++x)
-		{
-			if(tableId % _sudoku.getSize() == 0)
-			{
-				x = 0;
-				++y;
-			}
-			digit = _inspectedDigits.getOrDefault(tableId, -1);
-			inspectionResults[x][y] = digit;
-		}
-		results.setBoard(inspectionResults);
+		results.setBoard(_inspectedDigits);		// tableId is the index of the field
 		return results;
 	}
 
 	/**
-	 * Calculate amount of base reward granted to Player at the end of big iteration.
-	 * This reward value doesn't take reward equalization into account (the actual reward sent to Player may differ).
-	 * @param emptyFieldsCount	count of empty fields left by Player
-	 * @param sudokuSize	size of sudoku side
-	 * @return	amount of reward (should be non-positive in most cases)
-	 */
-	private float getPenalty(int emptyFieldsCount, int sudokuSize)
-	{
-		return -emptyFieldsCount/(float)sudokuSize;
-	}
-
-	/**
-	 * Hands out rewards to players and properly starts a new big iteration (resets agents' states beforehand).
-	 * Teacher expects a reply from Players in onRewardReceived method.
+	 * Hands out rewards to players and properly starts a new big iteration.
+	 * Rewards carry ID of the new iteration, so each Player is rewarded, resets hard and starts the iteration at once.
+	 * Tables reset lazily, on the first offers of the iteration.
 	 */
 	private void rewardPlayersAndRun()
 	{
-		_timerManager.tell(new TimerManager.NewIterationStartedMsg(3000));
+		_timerManager.tell(new TimerManager.NewIterationStartedMsg());
+		++_iterationId;
 
-		final int sudokuSize = _sudoku.getSize();
-		final int playerCount = _sudoku.getPlayerCount();
-		final int[] emptyFieldsCount = new int[playerCount]; // Number of empty fields each player has
-		Arrays.fill(emptyFieldsCount, 0);
-		int filledCount = 0; // Count of filled fields in the entire sudoku
-		int playerId = 0;
-		// Count empty fields for each Player
-		// Column players
-		for(int x = 0; x < sudokuSize; ++x, ++playerId)
-		{
-			for(int y = 0; y < sudokuSize; ++y)
-			{
-				if (_sudoku.getDigit(x, y) == 0)
-				{
-					++emptyFieldsCount[playerId];
-				}
-				else
-				{
-					++filledCount;
-				}
-			}
-		}
-		// Row players
-		for(int y = 0; y < sudokuSize; ++y, ++playerId)
-		{
-			for(int x = 0; x < sudokuSize; ++x)
-			{
-				if (_sudoku.getDigit(x, y) == 0)
-				{
-					++emptyFieldsCount[playerId];
-				}
-				else
-				{
-					++filledCount;
-				}
-			}
-		}
-		// Block (square) players
-		final int sudokuRank = _sudoku.getRank();
-		for(int y = 0; y < sudokuSize; y += sudokuRank)
-		{
-			for(int x = 0; x < sudokuSize; x += sudokuRank, ++playerId)
-			{
-				for(int j = 0; j < sudokuRank; ++j)
-				{
-					for(int i = 0; i < sudokuRank; ++i)
-					{
-						if (_sudoku.getDigit(x, y) == 0)
-						{
-							++emptyFieldsCount[playerId];
-						}
-						else
-						{
-							++filledCount;
-						}
-					}
-				}
-			}
-		}
-		// Calculate rewards
-		final float[] playerRewardsUnit = new float[playerCount];
-		for (int i = 0; i < playerCount; ++i)
-		{
-			playerRewardsUnit[i] = getPenalty(emptyFieldsCount[i], sudokuSize);
-		}
-		// Normalize rewards
-		float rewardSum = 0;
-		for (int i = 0; i < playerCount; ++i)
-		{
-			rewardSum += playerRewardsUnit[i]*(sudokuSize - emptyFieldsCount[i]);
-		}
-		final float compensationFactor = -rewardSum/filledCount;
-		ActorRef<Player.Protocol> playerRef;
-		for (int i = 0; i < playerCount; ++i)
+		_rewardPolicy.computeRewards(_sudoku, _topology, _playerRewards);
+		for (int playerId = 0; playerId < _playerRewards.length; ++playerId)
 		{
-			playerRewardsUnit[i] += compensationFactor;
-			// Hand out rewards
-			playerRef = _players.getOrDefault(i, null);
-			if (playerRef != null)
-			{
-				playerRef.tell(new Player.GrantRewardMsg(playerRewardsUnit[i], getContext().getSelf()));
-			}
+			_players.get(playerId).tell(
+					new Player.GrantRewardMsg(_playerRewards[playerId], getContext().getSelf(), _iterationId));
 		}
 	}
 
 	/**
-	 *  Teacher commands its agents (by sending ResetMemoryMsg) in appropriate order to reset theirs memory.
-	 *  It should collect all messages in onTablePerformedMemoryReset and onPlayerPerformedMemoryReset,
-	 *  and call startNewIteration method on collecting the last one.
+	 *  The Teacher starts new iteration of solving the sudoku.
+	 *  Initialisation is done by sending ConsentToStartIterationMsg with a new iteration ID to all Players.
+	 *  Agents reset their memories lazily, on the first message of the new iteration - so there is no need to wait
+	 *  for their acknowledgements. Players reset hard for a new big iteration, softly otherwise.
+	 *  Tables reset on the first offer of the new iteration.
+	 *  If there is no field left to negotiate (e.g. all of them were pre-solved), the solution is returned at once.
+	 *  @param isNewBigIteration	true if Players should forget digits fixed during the previous small iterations
 	 */
-	private void prepareForNewSmallIterationAndRun()
-	{
-		for(ActorRef<Table.Protocol> table : _tables.values())
-			table.tell(new Table.ResetMemoryMsg(getContext().getSelf()));
-
-		for(ActorRef<Player.Protocol> player : _players.values())
-			player.tell(new Player.ResetMemorySoftlyMsg(getContext().getSelf()));
-	}
-
-	private void prepareForNewBigIterationAndRun()
+	private void startNewIteration(boolean isNewBigIteration)
 	{
-		for(ActorRef<Table.Protocol> table : _tables.values())
-			table.tell(new Table.ResetMemoryMsg(getContext().getSelf()));
-
-		for(ActorRef<Player.Protocol> player : _players.values())
-			player.tell(new Player.ResetMemoryMsg(getContext().getSelf()));
+		++_iterationId;
+		if (_memory.getTablesNotFinishedCount() == 0)
+		{
+			returnNewSolution();
+			return;
+		}
+		_playersBroadcaster.tell(new Player.ConsentToStartIterationMsg(_iterationId, isNewBigIteration));
+		remindToCheckTables();
 	}
 
 	/**
-	 *  The Teacher starts new iteration of solving the sudoku.
-	 *  Method is called when all Teacher's agents are ready for new iteration.
-	 *  Initialisation is done by sending ConsentToStartIterationMsg to all Players.
+	 * Asks the TimerManager to check liveness of Tables which did not finish yet, after the adaptive liveness timeout.
+	 * Tables which report progress of their negotiations until then are spared.
 	 */
-	private void startNewIteration()
+	private void remindToCheckTables()
 	{
-		for(ActorRef<Player.Protocol> player : _players.values())
-			player.tell(new Player.ConsentToStartIterationMsg());
+		final int[] tableIds = new int[_memory.getTablesNotFinishedCount()];
+		_memory.getTablesNotFinished(tableIds);
+		_timerManager.tell(new TimerManager.RemindToCheckTablesMsg(TimerManager.ADAPTIVE_TIMEOUT, tableIds, _iterationId));
 	}
 
 	/**
@@ -736,43 +793,33 @@ public class Teacher extends AbstractBehavior<Teacher.Protocol>
 	{
 		if (_sudoku.getEmptyFieldsCount() != 0)		// if sudoku is not solved
 		{
-			if (!_sudoku.equals(_prevSudoku))	// if previous solution is different from the current one
+			if (_sudoku.getBoardHash() != _prevSolutionHash)	// if previous solution is different from the current one
 			{
-				_memory.setNormalTables(getNormalTableIds(_sudoku));
+				_memory.setNormalTables(_sudoku);
 				_memory.reset();
 
-				_prevSudoku = new Sudoku(_sudoku);
-				prepareForNewSmallIterationAndRun();
+				_prevSolutionHash = _sudoku.getBoardHash();
+				startNewIteration(false);
 			}
 			else
 			{
 				final Sudoku newSolution = new Sudoku(_sudoku);
-				_parent.tell(new SudokuSupervisor.IterationFinishedMsg(newSolution));
+				_parent.tell(new SudokuSupervisor.IterationFinishedMsg(newSolution, _riddleId, ++_returnedSolutionsCount));
 				rewardPlayersAndRun();
 				_sudoku.reset();
+				_memory.setNormalTables(_sudoku);
+				_memory.reset();
+				remindToCheckTables();
 			}
-			_memory.setNormalTables(getNormalTableIds(_sudoku));
-			_memory.reset();
 		}
 		else
 		{
 			final Sudoku newSolution = new Sudoku(_sudoku);
-			_parent.tell(new SudokuSupervisor.IterationFinishedMsg(newSolution));
+			_parent.tell(new SudokuSupervisor.IterationFinishedMsg(newSolution, _riddleId, ++_returnedSolutionsCount));
+			_timerManager.tell(new TimerManager.RemindToCheckTablesMsg(0, null));
 		}
 	}
 
-	/** Returns tableIds only for tables that are responsible for not hardcoded fields. */
-	private HashSet<Integer> getNormalTableIds(Sudoku sudoku)
-	{
-		final HashSet<Integer> normalTableIds = new HashSet<>();
-		for(int y = 0, tableId = 0; y < sudoku.getSize(); ++y)
-			for(int x = 0; x < sudoku.getSize(); ++x, ++tableId)
-				if(sudoku.getDigit(x, y) == 0)
-					normalTableIds.add(tableId);
-
-		return normalTableIds;
-	}
-
 	/** Teacher marks Table as finished and checks if it was the last one - if so, calls returnNewSolution(). */
 	private void afterTableFinished(int tableId)
 	{
@@ -1,104 +1,136 @@
 package sudoku;
 
-import java.util.HashSet;
-import java.util.Set;
+import java.util.Arrays;
 
+/**
+ * Bookkeeping of the Teacher, kept in bitsets of tableIds (64 Tables per word) so that no iteration allocates.
+ */
 public class TeacherMemory
 {
-    final private int _maxPlayerCount;
-
     final private int _maxTableCount;
 
-    private int _playerRewardedCount;
+    /** Registrations expected on startup - each Table registers 3 Players and is registered to them. */
+    final private int _maxRegistrationCount;
+
+    private int _registrationCount;
 
-    private int _playerResetCount;
+    /** Bitset of Tables that did not finish negotiations in the present iteration. */
+    final private long[] _tablesNotFinished;
 
-    private int _tableResetCount;
+    /** Cached popcount of _tablesNotFinished. */
+    private int _tablesNotFinishedCount;
 
-    final private Set<Integer> _tablesNotFinished;
+    /** Bitset of Tables responsible for fields that are not hardcoded - those take part in every iteration. */
+    final private long[] _normalTables;
 
-    final private Set<Integer> _normalTables;
+    /** Bitset of Tables that are not responding - their finish is not awaited in the present iteration. */
+    final private long[] _tableIdsConsideredDead;
 
-    private Set<Integer> _tableIdsConsideredDead;
+    /** Bitset of Tables that reported progress of negotiations since the last liveness check. */
+    final private long[] _tablesProgressed;
 
-    public TeacherMemory(int playerCount, int tableCount, HashSet<Integer> normalTables)
+    public TeacherMemory(int tableCount, Sudoku sudoku)
     {
-        this._maxPlayerCount = playerCount;
         this._maxTableCount = tableCount;
-        this._playerRewardedCount = 0;
-        this._playerResetCount = 0;
-        this._tableResetCount = 0;
-        this._tableIdsConsideredDead = new HashSet<>();
-        this._tablesNotFinished = new HashSet<>();
-        _tablesNotFinished.addAll(normalTables);
-        this._normalTables = new HashSet<>();
-        _normalTables.addAll(normalTables);
+        this._maxRegistrationCount = 2 * 3 * tableCount;
+        this._registrationCount = 0;
+        final int wordCount = (tableCount + 63) >>> 6;
+        this._tableIdsConsideredDead = new long[wordCount];
+        this._tablesNotFinished = new long[wordCount];
+        this._normalTables = new long[wordCount];
+        this._tablesProgressed = new long[wordCount];
+        setNormalTables(sudoku);
+        reset();
     }
 
-    public void setNormalTables(HashSet<Integer> normalTables)
+    /** Tables of empty fields of the sudoku become the normal ones - the sudoku is indexed the same way as Tables. */
+    public void setNormalTables(Sudoku sudoku)
     {
-        _normalTables.clear();
-        _normalTables.addAll(normalTables);
+        Arrays.fill(_normalTables, 0L);
+        for (int tableId = 0; tableId < _maxTableCount; ++tableId)
+            if (sudoku.getDigit(tableId) == 0)
+                _normalTables[tableId >>> 6] |= 1L << tableId;
     }
 
-    private boolean allResetsCollected()
+    public boolean addRegistration()
     {
-        if(_playerResetCount > _maxPlayerCount || _tableResetCount > _maxTableCount)
-            throw new RuntimeException("Too many resets!");
-        return _playerResetCount == _maxPlayerCount && _tableResetCount == _maxTableCount;
+        ++_registrationCount;
+        return _registrationCount == _maxRegistrationCount;
     }
 
-    public boolean addPlayerRewarded()
+    public int addTableFinished(int tableId)
     {
-        ++_playerRewardedCount;
-        return _playerRewardedCount == _maxPlayerCount;
-    }
+        final int word = tableId >>> 6;
+        final long bit = 1L << tableId;
+        if ((_tableIdsConsideredDead[word] & bit) == 0)
+        {
+            if ((_tablesNotFinished[word] & bit) == 0)    // if table is not present in the NotFinished set...
+                throw new RuntimeException("Table finished second time!");
+            _tablesNotFinished[word] &= ~bit;
+            --_tablesNotFinishedCount;
+        }
 
-    public boolean addPlayerReset()
-    {
-        ++_playerResetCount;
-        return allResetsCollected();
+        return _tablesNotFinishedCount;
     }
 
-    public boolean addTableReset()
+    public void addTableProgressed(int tableId)
     {
-        ++_tableResetCount;
-        return allResetsCollected();
+        _tablesProgressed[tableId >>> 6] |= 1L << tableId;
     }
 
-    public int addTableFinished(int tableId)
+    public int getTablesNotFinishedCount()
     {
-        if(!_tableIdsConsideredDead.contains(tableId))
-            if(!_tablesNotFinished.remove(tableId))    // if table is not present in the NotFinished Set...
-                throw new RuntimeException("Table finished second time!");
-
-        return _tablesNotFinished.size();
+        return _tablesNotFinishedCount;
     }
 
-    public int[] getTablesNotFinished()
+    /**
+     * Copies ids of Tables that did not finish negotiations yet, in ascending order.
+     * @param tableIds	buffer of at least getTablesNotFinishedCount() elements, reused by the caller
+     * @return			number of tableIds copied
+     */
+    public int getTablesNotFinished(int[] tableIds)
     {
-        final int[] notFinishedTableIds = new int[_tablesNotFinished.size()];
-        int i = 0;
-        for(int notFinishedTableId : _tablesNotFinished)
-            notFinishedTableIds[i++] = notFinishedTableId;
+        int count = 0;
+        for (int w = 0; w < _tablesNotFinished.length; ++w)
+            for (long word = _tablesNotFinished[w]; word != 0; word &= word - 1)
+                tableIds[count++] = (w << 6) + Long.numberOfTrailingZeros(word);
 
-        return notFinishedTableIds;
+        return count;
     }
 
     void reset()
     {
-        _playerRewardedCount = 0;
-        _playerResetCount = 0;
-        _tableResetCount = 0;
-        _tablesNotFinished.clear();
-        _tablesNotFinished.addAll(_normalTables);
-        _tableIdsConsideredDead.clear();
+        _tablesNotFinishedCount = 0;
+        for (int w = 0; w < _normalTables.length; ++w)
+        {
+            _tablesNotFinished[w] = _normalTables[w];
+            _tablesNotFinishedCount += Long.bitCount(_normalTables[w]);
+            _tableIdsConsideredDead[w] = 0L;
+            _tablesProgressed[w] = 0L;
+        }
     }
 
-    public void setTableIdsConsideredDead(int[] tableIdsConsideredDead)
+    /**
+     * Marks Tables which did not finish yet and made no progress since the last check as dead - the present iteration
+     * is no longer waiting for them, and their late finish is ignored. The mark is cleared on reset().
+     * Progress is cleared, so that the next check requires new progress.
+     * @param tableIdsConsideredDead	Tables suspected of not responding
+     * @return							number of Tables the iteration is still waiting for
+     */
+    public int setTableIdsConsideredDead(int[] tableIdsConsideredDead)
     {
-        _tableIdsConsideredDead.clear();
         for(int tableId : tableIdsConsideredDead)
-            this._tableIdsConsideredDead.add(tableId);
+        {
+            final int word = tableId >>> 6;
+            final long bit = 1L << tableId;
+            if ((_tablesNotFinished[word] & ~_tablesProgressed[word] & bit) != 0)
+            {
+                _tablesNotFinished[word] &= ~bit;
+                _tableIdsConsideredDead[word] |= bit;
+                --_tablesNotFinishedCount;
+            }
+        }
+        Arrays.fill(_tablesProgressed, 0L);
+        return _tablesNotFinishedCount;
     }
 }
@@ -6,8 +6,17 @@ import akka.actor.typed.javadsl.AbstractBehavior;
 import akka.actor.typed.javadsl.ActorContext;
 import akka.actor.typed.javadsl.Behaviors;
 import akka.actor.typed.javadsl.Receive;
+import akka.actor.typed.javadsl.TimerScheduler;
+import com.typesafe.config.Config;
 
-/** Agent that manages Timers (in parallel), responding to the Teacher. */
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Agent that manages timeouts (in parallel), responding to the Teacher.
+ * Timeouts are scheduled on Akka's TimerScheduler, so no thread is held while waiting.
+ * Unless the Teacher asks for given timeouts, they are derived from latencies of recent iterations.
+ */
 public class TimerManager extends AbstractBehavior<TimerManager.Protocol>
 {
 	/** Protocol interface for input messages. */
@@ -17,21 +26,107 @@ public class TimerManager extends AbstractBehavior<TimerManager.Protocol>
 	public static class CreateMsg implements Protocol
 	{
 		public final ActorRef<Teacher.Protocol> _parent;
+		public final TimeoutSettings _settings;
 		public CreateMsg(ActorRef<Teacher.Protocol> parent)
+		{
+			this(parent, TimeoutSettings.DEFAULT);
+		}
+		public CreateMsg(ActorRef<Teacher.Protocol> parent, TimeoutSettings settings)
 		{
 			this._parent = parent;
+			this._settings = settings;
+		}
+	}
+
+	/**
+	 * Settings of the adaptive iteration timeout.
+	 * The timeout is the given percentile of latencies of the last windowSize iterations times the multiplier,
+	 * clamped to [minMilliseconds, maxMilliseconds]. Until minSamples iterations are measured, initialMilliseconds is used.
+	 */
+	public static class TimeoutSettings
+	{
+		public static final TimeoutSettings DEFAULT = new TimeoutSettings(32, 4, 0.95, 3.0, 200, 30000, 3000);
+		/** Path of the settings in the configuration (see application.conf). */
+		public static final String CONFIG_PATH = "sudoku.iteration-timeout";
+
+		public final int _windowSize;
+		public final int _minSamples;
+		public final double _percentile;
+		public final double _multiplier;
+		public final int _minMilliseconds;
+		public final int _maxMilliseconds;
+		public final int _initialMilliseconds;
+		public TimeoutSettings(
+				int windowSize,
+				int minSamples,
+				double percentile,
+				double multiplier,
+				int minMilliseconds,
+				int maxMilliseconds,
+				int initialMilliseconds)
+		{
+			if (windowSize < 1 || minSamples < 1 || minSamples > windowSize)
+				throw new IllegalArgumentException("Window must hold at least minSamples >= 1 latencies.");
+			if (percentile <= 0 || percentile > 1 || multiplier <= 0)
+				throw new IllegalArgumentException("Percentile must be in (0, 1] and multiplier must be positive.");
+			if (minMilliseconds < 1 || minMilliseconds > maxMilliseconds)
+				throw new IllegalArgumentException("Timeout bounds must satisfy 1 <= min <= max.");
+			this._windowSize = windowSize;
+			this._minSamples = minSamples;
+			this._percentile = percentile;
+			this._multiplier = multiplier;
+			this._minMilliseconds = minMilliseconds;
+			this._maxMilliseconds = maxMilliseconds;
+			this._initialMilliseconds = Math.max(minMilliseconds, Math.min(maxMilliseconds, initialMilliseconds));
+		}
+
+		/**
+		 * Reads the settings from the "sudoku.iteration-timeout" block of the configuration.
+		 * Settings missing there (or the whole block, e.g. in tests) are taken from DEFAULT.
+		 * @param config	configuration, e.g. of the ActorSystem
+		 * @return			settings of the adaptive iteration timeout
+		 */
+		public static TimeoutSettings fromConfig(Config config)
+		{
+			if (!config.hasPath(CONFIG_PATH))
+				return DEFAULT;
+			final Config timeout = config.getConfig(CONFIG_PATH);
+			return new TimeoutSettings(
+					timeout.hasPath("window-size") ? timeout.getInt("window-size") : DEFAULT._windowSize,
+					timeout.hasPath("min-samples") ? timeout.getInt("min-samples") : DEFAULT._minSamples,
+					timeout.hasPath("percentile") ? timeout.getDouble("percentile") : DEFAULT._percentile,
+					timeout.hasPath("multiplier") ? timeout.getDouble("multiplier") : DEFAULT._multiplier,
+					getMilliseconds(timeout, "min", DEFAULT._minMilliseconds),
+					getMilliseconds(timeout, "max", DEFAULT._maxMilliseconds),
+					getMilliseconds(timeout, "initial", DEFAULT._initialMilliseconds));
+		}
+
+		private static int getMilliseconds(Config config, String path, int defaultMilliseconds)
+		{
+			return config.hasPath(path)
+					? (int) Math.min(Integer.MAX_VALUE, config.getDuration(path).toMillis())
+					: defaultMilliseconds;
 		}
 	}
 
-	/** Message from the Teacher waking him up after passing given time to check if its Tables are still alive. */
+	/**
+	 * Message from the Teacher waking him up after passing given time to check if its Tables are still alive.
+	 * With ADAPTIVE_TIMEOUT, the time is a part of the adaptive iteration timeout.
+	 */
 	public static class RemindToCheckTablesMsg implements Protocol, SharedProtocols.ValidationProtocol
 	{
 		public final int _waitMilliseconds;
 		public final int[] _tableIds;
-		public RemindToCheckTablesMsg(int waitMilliseconds, int[] tableIds)
+		public final int _iterationId;
+		public RemindToCheckTablesMsg(int waitMilliseconds, int[] tableIds, int iterationId)
 		{
 			this._waitMilliseconds = waitMilliseconds;
 			this._tableIds = tableIds;
+			this._iterationId = iterationId;
+		}
+		public RemindToCheckTablesMsg(int waitMilliseconds, int[] tableIds)
+		{
+			this(waitMilliseconds, tableIds, 0);
 		}
 	}
 
@@ -39,30 +134,70 @@ public class TimerManager extends AbstractBehavior<TimerManager.Protocol>
 	public static class NewIterationStartedMsg implements Protocol, SharedProtocols.ValidationProtocol
 	{
 		public final int _waitMilliseconds;
+		/** The iteration times out after given time. */
 		public NewIterationStartedMsg(int waitMilliseconds)
 		{
 			this._waitMilliseconds = waitMilliseconds;
 		}
+		/** The iteration times out after the adaptive timeout. */
+		public NewIterationStartedMsg()
+		{
+			this(ADAPTIVE_TIMEOUT);
+		}
+	}
+
+	/** Message for monitoring, asking for the present adaptive iteration timeout. */
+	public static class GetIterationTimeoutMsg implements Protocol
+	{
+		public final ActorRef<IterationTimeoutInfoMsg> _replyTo;
+		public GetIterationTimeoutMsg(ActorRef<IterationTimeoutInfoMsg> replyTo)
+		{
+			this._replyTo = replyTo;
+		}
+	}
+
+	/** Reply to GetIterationTimeoutMsg. */
+	public static class IterationTimeoutInfoMsg
+	{
+		public final int _timeoutMilliseconds;
+		public final int _sampleCount;
+		public IterationTimeoutInfoMsg(int timeoutMilliseconds, int sampleCount)
+		{
+			this._timeoutMilliseconds = timeoutMilliseconds;
+			this._sampleCount = sampleCount;
+		}
 	}
 
-	/** Message from the Timer announcing that given time has passed. */
+	/** Message sent by the scheduler to the TimerManager itself, announcing that given time has passed. */
 	public static class TimePassedMsg implements Protocol, SharedProtocols.TimeMeasurementProtocol
 	{
 		public final int _timerId;
 		public final int _type;
-		public final ActorRef<Timer.Protocol> _replyTo;
-		public TimePassedMsg(int timerId, ActorRef<Timer.Protocol> replyTo, int type)
+		public TimePassedMsg(int timerId, int type)
 		{
 			this._timerId = timerId;
-			this._replyTo = replyTo;
 			this._type = type;
 		}
 	}
 
+	/** Type of the timeout started by RemindToCheckTablesMsg. */
+	private static final int TABLES_TIMER_TYPE = 1;
+	/** Type of the timeout started by NewIterationStartedMsg. */
+	private static final int ITERATION_TIMER_TYPE = 2;
+	/** Value of _waitMilliseconds requesting the adaptive timeout. */
+	public static final int ADAPTIVE_TIMEOUT = -1;
+	/** The adaptive check of Tables' liveness takes this part of the adaptive iteration timeout. */
+	private static final int LIVENESS_TIMEOUT_DIVISOR = 4;
+	/** Lower bound of the adaptive check of Tables' liveness - shorter stalls happen on any busy machine. */
+	private static final int MIN_LIVENESS_MILLISECONDS = 100;
+
 
 	/** Parent - the only agent TimeManager replies to. */
 	private final ActorRef<Teacher.Protocol> _parent;
 
+	/** Scheduler of pending timeouts. Restarting a timer with the same key cancels the previous one. */
+	private final TimerScheduler<TimerManager.Protocol> _timers;
+
 	/** Timers counter - it also represents the latest timerId. First timerId = 1. */
 	private int _lastTimerId;
 
@@ -71,13 +206,44 @@ public class TimerManager extends AbstractBehavior<TimerManager.Protocol>
 	/** Table Ids requested to be checked on the last message. */
 	private int[] _latelyRequestedTableIds;
 
+	/** ID of the Teacher's iteration the Table Ids were requested to be checked in. */
+	private int _latelyRequestedIterationId;
+
+	/** Settings of the adaptive iteration timeout. */
+	private final TimeoutSettings _settings;
+
+	/** Ring buffer of latencies of recent iterations, in milliseconds. */
+	private final int[] _latencies;
+
+	/** Buffer the latencies are sorted in, when the percentile is computed. */
+	private final int[] _sortedLatencies;
+
+	/** Number of latencies measured so far (the ring buffer holds the last _latencies.length of them). */
+	private int _sampleCount;
+
+	/** Start of the present iteration (System.nanoTime()), or -1 if no iteration is measured. */
+	private long _iterationStartNanos;
+
+	/** Adaptive iteration timeout, recomputed after each measured iteration. */
+	private int _iterationTimeoutMilliseconds;
+
 	/** Private constructor called only by CreateMsg. */
-	private TimerManager(ActorContext<TimerManager.Protocol> context, CreateMsg msg)
+	private TimerManager(
+			ActorContext<TimerManager.Protocol> context,
+			TimerScheduler<TimerManager.Protocol> timers,
+			CreateMsg msg)
 	{
 		super(context);
 		this._parent = msg._parent;
+		this._timers = timers;
 		this._lastTimerId = 0;
 		this._lastIterationId = 0;
+		this._settings = msg._settings;
+		this._latencies = new int[_settings._windowSize];
+		this._sortedLatencies = new int[_settings._windowSize];
+		this._sampleCount = 0;
+		this._iterationStartNanos = -1;
+		this._iterationTimeoutMilliseconds = _settings._initialMilliseconds;
 	}
 
 	/**
@@ -87,7 +253,9 @@ public class TimerManager extends AbstractBehavior<TimerManager.Protocol>
 	 */
 	public static Behavior<TimerManager.Protocol> create(CreateMsg msg)
 	{
-		return Behaviors.setup(context -> new TimerManager(context, msg));
+		return Behaviors.setup(
+				context -> Behaviors.withTimers(timers -> new TimerManager(context, timers, msg))
+		);
 	}
 
 	/**
@@ -102,69 +270,116 @@ public class TimerManager extends AbstractBehavior<TimerManager.Protocol>
 				.onMessage(RemindToCheckTablesMsg.class, this::onRemindToCheckTables)
 				.onMessage(TimePassedMsg.class, this::onTimePassed)
 				.onMessage(NewIterationStartedMsg.class, this::onNewIterationStarted)
+				.onMessage(GetIterationTimeoutMsg.class, this::onGetIterationTimeout)
 				.build();
 	}
 
 
 	/**
-	 * TimerManager when asked by the Teacher, creates an agent - Timer to measure some time.
-	 * If the Teacher does not send another RemindToCheckTablesMsg until Timer ends clicking, it means that its Tables
-	 * are not responding. Note that Teacher can send _tableIds == null, meaning that it last Table had finished.
+	 * TimerManager when asked by the Teacher, schedules a timeout to measure some time.
+	 * If the Teacher does not send another RemindToCheckTablesMsg until the timeout passes, it means that its Tables
+	 * are not responding. Note that Teacher can send _tableIds == null, meaning that it last Table had finished -
+	 * then the pending timeout is cancelled. The adaptive wait follows the adaptive iteration timeout, so that slow
+	 * iterations are not cut short and fast ones do not wait long for dead Tables.
 	 * @param msg	request from the Teacher
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<TimerManager.Protocol> onRemindToCheckTables(RemindToCheckTablesMsg msg)
 	{
 		_latelyRequestedTableIds = msg._tableIds;
+		_latelyRequestedIterationId = msg._iterationId;
 		++_lastTimerId;
 		if(msg._tableIds != null)
 		{
-			getContext().spawn(
-					Timer.create(
-							new Timer.CreateMsg(getContext().getSelf(), msg._waitMilliseconds, _lastTimerId, 1)
-					),
-					"timer-" + _lastTimerId
+			final int waitMilliseconds = (msg._waitMilliseconds == ADAPTIVE_TIMEOUT)
+					? Math.max(MIN_LIVENESS_MILLISECONDS, _iterationTimeoutMilliseconds / LIVENESS_TIMEOUT_DIVISOR)
+					: msg._waitMilliseconds;
+			_timers.startSingleTimer(
+					TABLES_TIMER_TYPE,
+					new TimePassedMsg(_lastTimerId, TABLES_TIMER_TYPE),
+					Duration.ofMillis(waitMilliseconds)
 			);
 		}
+		else
+		{
+			_timers.cancel(TABLES_TIMER_TYPE);
+		}
 		return this;
 	}
 
 	/**
-	 * TimerManager when asked by the Teacher, creates an agent - Timer to measure some time.
-	 * If the Teacher does not send another NewIterationStartedMsg until Timer ends clicking, it means that there is
+	 * TimerManager when asked by the Teacher, schedules a timeout to measure some time.
+	 * If the Teacher does not send another NewIterationStartedMsg until the timeout passes, it means that there is
 	 * some timeout.
+	 * Start of the new iteration ends the previous one, so its latency is measured and the adaptive timeout updated.
+	 * A timed out iteration is measured too - it lasted at least the timeout, so repeated timeouts make it longer.
 	 * @param msg	request from the Teacher
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<TimerManager.Protocol> onNewIterationStarted(NewIterationStartedMsg msg)
 	{
+		final long now = System.nanoTime();
+		if (_iterationStartNanos >= 0)
+			addLatency((int) Math.min(Integer.MAX_VALUE, (now - _iterationStartNanos) / 1_000_000));
+		_iterationStartNanos = now;
+
 		++_lastIterationId;
-		getContext().spawn(
-				Timer.create(
-						new Timer.CreateMsg(getContext().getSelf(), msg._waitMilliseconds, _lastIterationId, 2)
-				),
-				"timer2-" + _lastIterationId
+		final int waitMilliseconds =
+				(msg._waitMilliseconds == ADAPTIVE_TIMEOUT) ? _iterationTimeoutMilliseconds : msg._waitMilliseconds;
+		_timers.startSingleTimer(
+				ITERATION_TIMER_TYPE,
+				new TimePassedMsg(_lastIterationId, ITERATION_TIMER_TYPE),
+				Duration.ofMillis(waitMilliseconds)
 		);
 		return this;
 	}
 
+	/**
+	 * Records latency of a finished iteration and recomputes the adaptive timeout.
+	 * @param latencyMilliseconds	duration of the iteration
+	 */
+	private void addLatency(int latencyMilliseconds)
+	{
+		_latencies[_sampleCount % _latencies.length] = latencyMilliseconds;
+		++_sampleCount;
+		if (_sampleCount < _settings._minSamples)
+			return;
+
+		final int windowCount = Math.min(_sampleCount, _latencies.length);
+		System.arraycopy(_latencies, 0, _sortedLatencies, 0, windowCount);
+		Arrays.sort(_sortedLatencies, 0, windowCount);
+		final int rank = Math.max(0, (int) Math.ceil(_settings._percentile * windowCount) - 1);
+		final double timeout = _sortedLatencies[rank] * _settings._multiplier;
+		_iterationTimeoutMilliseconds = (int) Math.max(
+				_settings._minMilliseconds, Math.min(_settings._maxMilliseconds, timeout));
+	}
+
+	/**
+	 * Replies with the present adaptive iteration timeout, for monitoring.
+	 * @param msg	request
+	 * @return 		wrapped Behavior
+	 */
+	private Behavior<TimerManager.Protocol> onGetIterationTimeout(GetIterationTimeoutMsg msg)
+	{
+		msg._replyTo.tell(new IterationTimeoutInfoMsg(_iterationTimeoutMilliseconds, _sampleCount));
+		return this;
+	}
+
 	/**
 	 * TimerManager is informed that certain time has passed. If in this very moment TimerManager did not received
-	 * new reminder, it should reply with warning that Teacher's Tables are not responding. Timer, who sent this msg,
-	 * is no longer needed - can be removed.
-	 * @param msg	ping from the Timer
+	 * new reminder, it should reply with warning that Teacher's Tables are not responding.
+	 * @param msg	ping from the scheduler
 	 * @return 		wrapped Behavior
 	 */
 	private Behavior<TimerManager.Protocol> onTimePassed(TimePassedMsg msg)
 	{
-		if(msg._type == 1 && _lastTimerId == msg._timerId)	// if TimerManager did not received new reminder
-			_parent.tell(new Teacher.TablesAreNotRespondingMsg(_latelyRequestedTableIds));
+		if(msg._type == TABLES_TIMER_TYPE && _lastTimerId == msg._timerId)	// if TimerManager did not received new reminder
+			_parent.tell(new Teacher.TablesAreNotRespondingMsg(
+					_latelyRequestedTableIds, _latelyRequestedIterationId));
 
-		if(msg._type == 2 && _lastIterationId == msg._timerId)	// if TimerManager did not received new reminder
+		if(msg._type == ITERATION_TIMER_TYPE && _lastIterationId == msg._timerId)	// if TimerManager did not received new reminder
 			_parent.tell(new Teacher.IterationTimeoutMsg(_lastIterationId));
 
-
-		getContext().stop(msg._replyTo);
 		return this;
 	}
-}
\ No newline at end of file
+}
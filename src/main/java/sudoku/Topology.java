@@ -0,0 +1,113 @@
+package sudoku;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Immutable index of the structure of Sudoku of given rank: which fields (Tables) belong to which Players.
+ * Players are numbered: columns first, then rows, then blocks (squares) row by row.
+ * Tables are numbered row by row: tableId = y * size + x.
+ * It is built once per rank and shared by reference - by the Teacher, its agents and SudokuPreSolver.
+ */
+public final class Topology
+{
+	/** Topologies already built. Key: rank. */
+	private static final ConcurrentHashMap<Integer, Topology> _cache = new ConcurrentHashMap<>();
+
+	/** Rank of the Sudoku. */
+	private final int _rank;
+	/** Size of the Sudoku (side of the board). */
+	private final int _size;
+	/** IDs of Tables of each Player, in order of registration. Index: playerId. */
+	private final int[][] _tableIds;
+	/** IDs of the three Players of each Table: column, row and block. Index: 3 * tableId + k. */
+	private final int[] _playerIds;
+	/** Positions of Tables. Index: tableId. */
+	private final Position[] _positions;
+
+	/**
+	 * Returns the Topology of given rank - built on first use, then cached.
+	 * @param rank	rank of the Sudoku
+	 * @return		shared Topology
+	 */
+	public static Topology of(int rank)
+	{
+		return _cache.computeIfAbsent(rank, Topology::new);
+	}
+
+	private Topology(int rank)
+	{
+		this._rank = rank;
+		this._size = rank * rank;
+		this._tableIds = new int[3 * _size][_size];
+		this._playerIds = new int[3 * _size * _size];
+		this._positions = new Position[_size * _size];
+
+		final int[] tableCounts = new int[3 * _size];
+		for (int y = 0, tableId = 0; y < _size; ++y)
+		{
+			for (int x = 0; x < _size; ++x, ++tableId)
+			{
+				final int column = x;
+				final int row = _size + y;
+				final int block = 2 * _size + (y / _rank) * _rank + x / _rank;
+				_playerIds[3 * tableId] = column;
+				_playerIds[3 * tableId + 1] = row;
+				_playerIds[3 * tableId + 2] = block;
+				_tableIds[column][tableCounts[column]++] = tableId;
+				_tableIds[row][tableCounts[row]++] = tableId;
+				_tableIds[block][tableCounts[block]++] = tableId;
+				_positions[tableId] = new Position(x, y);
+			}
+		}
+
+	}
+
+	public int getRank()
+	{
+		return _rank;
+	}
+
+	public int getSize()
+	{
+		return _size;
+	}
+
+	public int getPlayerCount()
+	{
+		return 3 * _size;
+	}
+
+	public int getTableCount()
+	{
+		return _size * _size;
+	}
+
+	/**
+	 * IDs of Tables of given Player - a column and a block top-down, a row from the left.
+	 * The array is shared, it must not be modified.
+	 * @param playerId	(global) ID of a Player
+	 * @return			array of IDs of Tables matching to given Player
+	 */
+	public int[] getTableIds(int playerId)
+	{
+		if (playerId < 0 || playerId >= _tableIds.length)
+			throw new IllegalArgumentException("Given playerId is out of range.");
+		return _tableIds[playerId];
+	}
+
+	/**
+	 * ID of one of the three Players of given Table.
+	 * @param tableId	(global) ID of a Table
+	 * @param k			0 for the column, 1 for the row, 2 for the block Player
+	 * @return			ID of the Player
+	 */
+	public int getPlayerId(int tableId, int k)
+	{
+		return _playerIds[3 * tableId + k];
+	}
+
+	public Position getPosition(int tableId)
+	{
+		return _positions[tableId];
+	}
+}
@@ -57,12 +57,13 @@ public class PlayerTest
 		thePlayer.tell(new Player.MemorisedDigitsRequestMsg(testTeacher.getRef(), tableIdsToTest));
 		Teacher.MemorisedDigitsMsg reply = (Teacher.MemorisedDigitsMsg) testTeacher.receiveMessage();
 		assertEquals(thePlayerId, reply._requestedPlayerId);
+		assertEquals(9, reply._tableIds.length);		// the Table #9 is not registered
 		for(int tableId = 0; tableId < 9; ++tableId)
 		{
-			assertEquals((int) digits[tableId], (int) reply._memorisedDigits.get(tableId).first);
-			assertEquals(digits[tableId] == 0, reply._memorisedDigits.get(tableId).first == 0);
+			assertEquals(tableId, reply._tableIds[tableId]);
+			assertEquals(digits[tableId], reply._digits[tableId]);
+			assertEquals(digits[tableId] == 0, reply.getMask(tableId));
 		}
-		assertNull(reply._memorisedDigits.get(9));
 
 		System.out.println("\n\t\t\t>>> IncorrectRegisterException expected <<< \n");
 		thePlayer.tell(new Player.RegisterTableMsg(
@@ -103,13 +104,8 @@ public class PlayerTest
 		}
 
 
-		// Start "new iteration"
-		thePlayer.tell(new Player.ResetMemoryMsg(teacherDummy.getRef()));
-		Teacher.PlayerPerformedMemoryResetMsg response0 =
-				(Teacher.PlayerPerformedMemoryResetMsg) teacherDummy.receiveMessage();
-		assertEquals(0, response0._id);
-
-		thePlayer.tell(new Player.ConsentToStartIterationMsg());
+		// Start "new iteration" - the Player resets lazily, on seeing its ID
+		thePlayer.tell(new Player.ConsentToStartIterationMsg(1, true));
 		Table.OfferMsg responseOffer = (Table.OfferMsg) tableDummy.receiveMessage();
 		int respondedDigit = responseOffer._offeredDigit;
 		assertNotEquals(5, respondedDigit);
@@ -210,13 +206,8 @@ public class PlayerTest
 		}
 
 
-		// Start "new iteration"
-		thePlayer.tell(new Player.ResetMemoryMsg(teacherDummy.getRef()));
-		Teacher.PlayerPerformedMemoryResetMsg response0 =
-				(Teacher.PlayerPerformedMemoryResetMsg) teacherDummy.receiveMessage();
-		assertEquals(0, response0._id);
-
-		thePlayer.tell(new Player.ConsentToStartIterationMsg());
+		// Start "new iteration" - the Player resets lazily, on seeing its ID
+		thePlayer.tell(new Player.ConsentToStartIterationMsg(1, true));
 		Table.OfferMsg responseOffer = (Table.OfferMsg) tableDummy.receiveMessage();
 		assertEquals(1, responseOffer._offeredDigit);
 		for(TestProbe<Table.Protocol> tableOtherDummy : tableOtherDummies)
@@ -242,4 +233,160 @@ public class PlayerTest
 		thePlayer.tell(new Player.NegotiationsFinishedMsg(0, tableDummy.getRef(), 0, 1));
 		tableDummy.expectNoMessage();
 	}
+
+	@Test
+	public void testRewardStartingBigIteration()
+	{
+		TestProbe<Teacher.Protocol> teacherDummy = testKit.createTestProbe();
+		Vector<TestProbe<Table.Protocol>> tableDummies = new Vector<>();
+		for(int i = 0; i < 4; i++)
+			tableDummies.add(testKit.createTestProbe());
+
+		ActorRef<Player.Protocol> thePlayer = testKit.spawn(
+				Player.create(new Player.CreateMsg(0, 4, teacherDummy.getRef())), "thePlayer3");
+		for(int tableId = 0; tableId < 4; tableId++)
+		{
+			thePlayer.tell(new Player.RegisterTableMsg(
+					tableDummies.get(tableId).getRef(), tableId * 4, 0, false, teacherDummy.getRef()));
+			teacherDummy.receiveMessage();
+		}
+
+		// No ResetMemoryMsg - consent to the iteration #1 resets the Player
+		thePlayer.tell(new Player.ConsentToStartIterationMsg(1, true));
+		for(TestProbe<Table.Protocol> tableDummy : tableDummies)
+			assertEquals(1, ((Table.OfferMsg) tableDummy.receiveMessage())._iterationId);
+
+		// Reward starts the iteration #2 at once
+		thePlayer.tell(new Player.GrantRewardMsg(-0.5f, teacherDummy.getRef(), 2));
+		assertEquals(0, ((Teacher.RewardReceivedMsg) teacherDummy.receiveMessage())._playerId);
+		for(TestProbe<Table.Protocol> tableDummy : tableDummies)
+			assertEquals(2, ((Table.OfferMsg) tableDummy.receiveMessage())._iterationId);
+
+		// Late consent to the past iteration is ignored
+		thePlayer.tell(new Player.ConsentToStartIterationMsg(1, false));
+		for(TestProbe<Table.Protocol> tableDummy : tableDummies)
+			tableDummy.expectNoMessage();
+	}
+
+	@Test
+	public void testPrioritizingTables()
+	{
+		PlayerMemory memory = new PlayerMemory(4);
+		final int[] digits = {2, 1, 0, 3};
+		for(int n = 0; n < 4; ++n)
+			memory.setField(n, digits[n], false);
+		memory.rewardCurrentDigits(1f);
+		memory.setDigit(0, 4);
+		memory.setDigit(3, 1);
+		memory.rewardCurrentDigits(-0.5f);
+		memory.prioritizeTables();
+
+		// Digits from the highest to the lowest reward, equal rewards in order of digits
+		final int[][] expectedDigits = {{2, 1, 3, 4}, {1, 2, 3, 4}, {1, 2, 3, 4}, {3, 2, 4, 1}};
+		for(int n = 0; n < 4; ++n)
+			for(int p = 0; p < 4; ++p)
+				assertEquals(expectedDigits[n][p], memory.getDigitPriority(n, p));
+		// Tables from the lowest to the highest sum of rewards, equal sums in order of Tables
+		final int[] expectedTables = {2, 0, 1, 3};
+		for(int p = 0; p < 4; ++p)
+			assertEquals(expectedTables[p], memory.getTablePriority(p));
+
+		// Priorities follow the rewards, but only when they change
+		memory.rewardCurrentDigits(0f);
+		memory.prioritizeTables();
+		assertEquals(2, memory.getTablePriority(0));
+		memory.setDigit(2, 2);
+		memory.rewardCurrentDigits(1f);
+		memory.prioritizeTables();
+		assertEquals(4, memory.getDigitPriority(0, 1));
+		assertEquals(2, memory.getDigitPriority(2, 0));
+	}
+
+	@Test
+	public void testAlreadyAcceptedDigits()
+	{
+		PlayerMemory memory = new PlayerMemory(4);
+		for(int n = 0; n < 4; ++n)
+			memory.setField(n, 0, false);
+		memory.setField(3, 4, true);
+		memory.hardReset(1);
+		assertTrue(memory.alreadyAccepted(4));		// hard-coded digit is finished for good
+		assertFalse(memory.alreadyAccepted(1));
+
+		memory.setAccepted(0, 1);
+		assertTrue(memory.alreadyAccepted(1));
+		assertTrue(memory.getCollision(1, 1));
+		memory.setAccepted(0, 2);
+		assertFalse(memory.alreadyAccepted(1));
+		assertTrue(memory.alreadyAccepted(2));
+
+		memory.setDigit(1, 3);
+		assertFalse(memory.alreadyAccepted(3));
+		memory.finish(1);
+		assertTrue(memory.alreadyAccepted(3));
+		memory.setDigit(1, 1);					// finished field takes its new digit
+		assertFalse(memory.alreadyAccepted(3));
+		assertTrue(memory.alreadyAccepted(1));
+
+		memory.softReset(2);
+		assertTrue(memory.alreadyAccepted(1));		// finished digit stays until the hard reset
+		assertFalse(memory.alreadyAccepted(2));
+		assertTrue(memory.alreadyAccepted(4));
+	}
+
+	@Test
+	public void testCollisions()
+	{
+		PlayerMemory memory = new PlayerMemory(4);
+		for(int n = 0; n < 4; ++n)
+			memory.setField(n, 0, false);
+		memory.setField(3, 4, true);
+		memory.hardReset(1);
+		assertTrue(memory.getCollision(3, 1));		// every digit collides on a hard-coded field
+		assertFalse(memory.getCollision(0, 1));
+
+		memory.setCollision(0, 1);
+		assertTrue(memory.getCollision(0, 1));
+		assertFalse(memory.getCollision(1, 1));
+		memory.setDigitColliding(2);
+		for(int n = 0; n < 4; ++n)
+			assertTrue(memory.getCollision(n, 2));
+		assertFalse(memory.getCollision(1, 3));
+
+		memory.softReset(2);
+		assertFalse(memory.getCollision(0, 1));
+		assertFalse(memory.getCollision(0, 2));
+		assertTrue(memory.getCollision(0, 4));
+	}
+
+	@Test
+	public void testBestDigitCursor()
+	{
+		PlayerMemory memory = new PlayerMemory(4);
+		for(int n = 0; n < 4; ++n)
+			memory.setField(n, 0, false);
+		memory.hardReset(1);
+		memory.prioritizeTables();					// no rewards - digits in ascending order
+		assertEquals(1, memory.getBestDigit(0));
+
+		memory.setCollision(0, 1);
+		assertEquals(2, memory.getBestDigit(0));
+		memory.setAccepted(1, 2);					// digit accepted on another field blocks it only for a while
+		assertEquals(3, memory.getBestDigit(0));
+		memory.setAccepted(1, 0);
+		assertEquals(2, memory.getBestDigit(0));
+		memory.setAccepted(3, 1);
+		memory.setCollision(2, 2);
+		assertEquals(3, memory.getBestDigit(2));		// digits past a temporarily blocked one are checked fully
+		memory.setAccepted(3, 0);
+
+		memory.setDigitColliding(2);
+		memory.setCollision(0, 3);
+		memory.setCollision(0, 4);
+		assertEquals(0, memory.getBestDigit(0));
+		assertEquals(1, memory.getBestDigit(1));
+
+		memory.softReset(2);
+		assertEquals(1, memory.getBestDigit(0));
+	}
 }
@@ -0,0 +1,99 @@
+package sudoku;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SolutionJournalTest
+{
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Sudoku createSudoku(int rank, int digitsToInsert)
+	{
+		Sudoku sudoku = new Sudoku(rank);
+		final int size = rank * rank;
+		for(int i = 0; i < digitsToInsert; ++i)
+			sudoku.insertDigit(i % size, i / size, 1 + (i * 7) % size);
+		sudoku.insertClue(size - 1, size - 1, size);
+		return sudoku;
+	}
+
+	@Test
+	public void testWritingAndReadingRecords() throws IOException
+	{
+		final Path path = folder.getRoot().toPath().resolve("solutions.journal");
+		Sudoku small = createSudoku(2, 7);
+		Sudoku big = createSudoku(4, 100);
+
+		try (SolutionJournal journal = SolutionJournal.open(path))
+		{
+			journal.append(1, 1, small);
+			journal.append(2, 1, big);
+		}
+		// Reopened journal is appended to, not overwritten
+		try (SolutionJournal journal = SolutionJournal.open(path))
+		{
+			journal.append(1, 2, small);
+		}
+
+		try (SolutionJournal.Reader reader = SolutionJournal.read(path))
+		{
+			SolutionJournal.Record record = reader.next();
+			assertEquals(1, record._riddleId);
+			assertEquals(1, record._iterationNO);
+			assertEquals(small, record.getSudoku());
+			assertTrue(record.getSudoku().getMask(3, 3));
+			assertFalse(record.getSudoku().getMask(0, 0));
+
+			record = reader.next();
+			assertEquals(2, record._riddleId);
+			assertEquals(4, record._rank);
+			assertEquals(big, record.getSudoku());
+
+			record = reader.next();
+			assertEquals(2, record._iterationNO);
+			assertTrue(record._timestamp > 0);
+			assertFalse(reader.hasNext());
+		}
+	}
+
+	@Test
+	public void testTruncatedRecordIsIgnored() throws IOException
+	{
+		final Path path = folder.getRoot().toPath().resolve("solutions.journal");
+		try (SolutionJournal journal = SolutionJournal.open(path))
+		{
+			for(int i = 0; i < 10; ++i)
+				journal.append(i, 1, createSudoku(3, i));
+		}
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE))
+		{
+			channel.truncate(channel.size() - 3);
+		}
+
+		// A window of 50 bytes forces remapping of the file while reading almost every record
+		try (SolutionJournal.Reader reader = new SolutionJournal.Reader(
+				FileChannel.open(path, StandardOpenOption.READ), 50))
+		{
+			int count = 0;
+			while (reader.hasNext())
+			{
+				SolutionJournal.Record record = reader.next();
+				assertEquals(count, record._riddleId);
+				assertEquals(createSudoku(3, count), record.getSudoku());
+				++count;
+			}
+			assertEquals(9, count);
+		}
+	}
+}
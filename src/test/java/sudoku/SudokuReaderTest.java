@@ -0,0 +1,123 @@
+package sudoku;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.stream.Collectors;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SudokuReaderTest
+{
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+
+	private Path writeFile(String name, String content) throws IOException
+	{
+		final Path path = folder.getRoot().toPath().resolve(name);
+		Files.write(path, content.getBytes(StandardCharsets.US_ASCII));
+		return path;
+	}
+
+	@Test
+	public void testReadingLines() throws IOException
+	{
+		final String riddle = "080000200000084090006320010097000080800903002010000950070045800030710000008000040";
+		final Path path = writeFile("riddles.txt",
+				"# comment line\n" + riddle + "\r\n" + "\n" + riddle.replace('0', '.') + "\n");
+
+		try (SudokuReader reader = SudokuReader.open(path))
+		{
+			assertTrue(reader.hasNext());
+			Sudoku first = reader.next();
+			assertEquals(3, first.getRank());
+			assertEquals(8, first.getDigit(1, 0));
+			assertEquals(2, first.getDigit(6, 0));
+			assertEquals(4, first.getDigit(7, 8));
+			assertTrue(first.getMask(1, 0));
+			assertFalse(first.getMask(0, 0));
+
+			assertTrue(reader.hasNext());
+			assertEquals(first, reader.next());
+			assertFalse(reader.hasNext());
+		}
+	}
+
+	@Test
+	public void testReadingGridsAndJson() throws IOException
+	{
+		final Path gridPath = writeFile("riddles.sdk",
+				"1 . 3 4\n" +
+				"3 4 1 2\n" +
+				"2 1 4 3\n" +
+				"4 3 2 0\n" +
+				"\n" +
+				"\n" +
+				"16 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" + String.join("",
+						Collections.nCopies(15, "0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n")));
+		try (SudokuReader reader = SudokuReader.open(gridPath))
+		{
+			Sudoku small = reader.next();
+			assertEquals(2, small.getRank());
+			assertEquals(0, small.getDigit(1, 0));
+			assertEquals(3, small.getDigit(2, 0));
+			assertEquals(2, small.getEmptyFieldsCount());
+
+			Sudoku big = reader.next();
+			assertEquals(4, big.getRank());
+			assertEquals(16, big.getDigit(0, 0));
+			assertFalse(reader.hasNext());
+		}
+
+		final Path jsonPath = writeFile("riddles.json",
+				"[[1,0,3,4],[3,4,1,2],[2,1,4,3],[4,3,2,0]]\n" +
+				"[[0,0,0,0],[0,0,0,0],[0,0,0,0],[0,0,0,1]]\n");
+		try (SudokuReader reader = SudokuReader.open(jsonPath))
+		{
+			assertEquals(2, reader.stream().collect(Collectors.toList()).size());
+		}
+	}
+
+	@Test
+	public void testRiddlesCrossingMappedWindows() throws IOException
+	{
+		final String line = "080000200000084090006320010097000080800903002010000950070045800030710000008000040\n";
+		final StringBuilder content = new StringBuilder();
+		for (int i = 0; i < 10; ++i)
+			content.append(line);
+		final Path path = writeFile("riddles.txt", content.toString());
+
+		// A window of 100 bytes forces remapping of the file while reading almost every riddle
+		try (SudokuReader reader = new SudokuReader(
+				FileChannel.open(path, StandardOpenOption.READ), SudokuReader.Format.LINE, 100))
+		{
+			int count = 0;
+			while (reader.hasNext())
+			{
+				assertEquals(8, reader.next().getDigit(1, 0));
+				++count;
+			}
+			assertEquals(10, count);
+		}
+	}
+
+	@Test(expected = SudokuReader.MalformedSudokuException.class)
+	public void testMalformedRiddle() throws IOException
+	{
+		final Path path = writeFile("riddles.txt", "12345\n");
+		try (SudokuReader reader = SudokuReader.open(path))
+		{
+			reader.next();
+		}
+	}
+}
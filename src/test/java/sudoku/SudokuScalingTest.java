@@ -0,0 +1,108 @@
+package sudoku;
+
+import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
+import akka.actor.testkit.typed.javadsl.TestProbe;
+import akka.actor.typed.ActorRef;
+import org.junit.ClassRule;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Random;
+import java.util.concurrent.atomic.LongAdder;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Scaling matrix of the multi-agent system: for growing ranks, reports number of agents, messages per iteration,
+ * heap usage and time of solving. Ranks above 4 are slow, so they are run only on demand:
+ * mvn test -Dtest=SudokuScalingTest -Dsudoku.scaling.maxRank=8
+ */
+public class SudokuScalingTest
+{
+	@ClassRule
+	public static final TestKitJunitResource testKit = new TestKitJunitResource();
+
+	/** Number of big iterations the agents are given for every rank. */
+	private static final int MAX_ITERATIONS = 3;
+
+	/** Creates a valid solution of given rank, and empties given fraction of its fields. */
+	private Sudoku createRiddle(int rank, double emptyFraction, long seed)
+	{
+		final int size = rank * rank;
+		final int[] fields = new int[size * size];
+		for(int y = 0; y < size; ++y)
+			for(int x = 0; x < size; ++x)
+				fields[y * size + x] = (rank * (y % rank) + y / rank + x) % size + 1;
+
+		final Random random = new Random(seed);
+		for(int i = 0; i < fields.length; ++i)
+			if(random.nextDouble() < emptyFraction)
+				fields[i] = 0;
+
+		Sudoku sudoku = new Sudoku(rank);
+		sudoku.setBoard(fields);
+		return sudoku;
+	}
+
+	private static long usedHeap()
+	{
+		final Runtime runtime = Runtime.getRuntime();
+		System.gc();
+		return runtime.totalMemory() - runtime.freeMemory();
+	}
+
+	@Test
+	public void testScalingMatrix()
+	{
+		final int maxRank = Integer.getInteger("sudoku.scaling.maxRank", 4);
+		final StringBuilder report = new StringBuilder(String.format(
+				"%4s %6s %6s %7s %12s %14s %10s %10s %7s%n",
+				"rank", "tables", "empty", "agents", "messages", "msgs/iteration", "heap [MB]", "time [ms]", "solved"));
+
+		for(int rank = 2; rank <= maxRank; ++rank)
+		for(Teacher.TableGrouping grouping : new Teacher.TableGrouping[]{
+				Teacher.TableGrouping.CELL, Teacher.TableGrouping.BLOCK})
+		{
+			final Sudoku riddle = createRiddle(rank, 0.25, rank);
+			final int size = rank * rank;
+			// Players, Tables (or TableShards), the Teacher and its TimerManager
+			final int agentCount = 3 * size + (grouping == Teacher.TableGrouping.CELL ? size * size : size) + 2;
+			final LongAdder messageCounter = new LongAdder();
+			final TestProbe<SudokuSupervisor.Protocol> dummyGuardian = testKit.createTestProbe();
+
+			final long heapBefore = usedHeap();
+			final long startNanos = System.nanoTime();
+			ActorRef<Teacher.Protocol> teacher = testKit.spawn(Teacher.create(new Teacher.CreateMsg(
+					"teacher-" + rank, riddle, dummyGuardian.getRef(), Teacher.Settings.DEFAULT
+							.withRiddleId(rank).withMessageCounter(messageCounter).withTableGrouping(grouping))),
+					"scaling-" + rank + "-" + grouping);
+
+			SudokuSupervisor.IterationFinishedMsg results;
+			int iterationCount = 0;
+			do
+			{
+				results = (SudokuSupervisor.IterationFinishedMsg)
+						dummyGuardian.receiveMessage(Duration.ofSeconds(60 * rank));
+				++iterationCount;
+			}
+			while(!results._newSolution.isSolvedAndValid() && iterationCount < MAX_ITERATIONS);
+			final long elapsedMillis = (System.nanoTime() - startNanos) / 1000000;
+			final long heapUsed = Math.max(0, usedHeap() - heapBefore);
+			final long messageCount = messageCounter.sum();
+			testKit.stop(teacher);
+
+			report.append(String.format("%4d %6s %6d %7d %12d %14d %10.1f %10d %7s%n",
+					rank, grouping, riddle.getEmptyFieldsCount(), agentCount, messageCount, messageCount / iterationCount,
+					heapUsed / (1024.0 * 1024.0), elapsedMillis, results._newSolution.isSolvedAndValid()));
+
+			assertEquals(rank, results._newSolution.getRank());
+			assertEquals(rank, results._riddleId);
+			assertTrue(messageCount > agentCount);
+			if(rank <= 3)
+				assertTrue(results._newSolution.isSolvedAndValid());
+		}
+		System.out.println();
+		System.out.print(report);
+	}
+}
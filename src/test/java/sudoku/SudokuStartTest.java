@@ -7,9 +7,13 @@ import org.junit.ClassRule;
 import org.junit.Test;
 
 import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 public class SudokuStartTest
 {
@@ -388,7 +392,8 @@ public class SudokuStartTest
 		//System.out.println();
 		//sudokuResults.printNatural();
 
-		while(!sudokuResults.equals(sudokuSolution) && chances-- > 0)		// give another chance
+		// a solved sudoku is returned only once, so stop waiting for it
+		while(!sudokuResults.equals(sudokuSolution) && sudokuResults.getEmptyFieldsCount() != 0 && chances-- > 0)
 		{
 			results = (SudokuSupervisor.IterationFinishedMsg) dummyGuardian.receiveMessage(Duration.ofSeconds(10));
 			prevSudoku = sudokuResults;
@@ -577,4 +582,92 @@ public class SudokuStartTest
 		sudokuResults.printNatural();
 		assertEquals(sudokuSolution, sudokuResults);
 	}
-}
\ No newline at end of file
+
+	@Test
+	public void test_13_SolvingBatch()
+	{
+		int rank = 2;
+		int[][] naturalBoard = {
+				{0,2,3,4},
+				{3,4,1,2},
+				{2,1,4,3},
+				{4,3,2,0}
+		};
+		int[][] naturalSolution = {
+				{1,2,3,4},
+				{3,4,1,2},
+				{2,1,4,3},
+				{4,3,2,1}
+		};
+		Sudoku sudokuSolution = createSudokuFromNaturalBoard(rank, naturalSolution);
+		List<Sudoku> riddles = Arrays.asList(
+				createSudokuFromNaturalBoard(rank, naturalBoard),
+				new Sudoku(rank),
+				createSudokuFromNaturalBoard(rank, naturalBoard)
+		);
+
+		TestProbe<SharedProtocols.BatchProtocol> batchProbe = testKit.createTestProbe();
+		ActorRef<SudokuSupervisor.Protocol> guardian =
+				testKit.spawn(SudokuSupervisor.createForBatches(), "test-13");
+		guardian.tell(new SudokuSupervisor.SolveBatchMsg(riddles.iterator(), 2, 3, batchProbe.getRef()));
+
+		// Riddles are solved in parallel, so results may come in any order
+		boolean[] reported = new boolean[riddles.size()];
+		for(int i = 0; i < riddles.size(); ++i)
+		{
+			SudokuSupervisor.RiddleSolvedMsg result = (SudokuSupervisor.RiddleSolvedMsg)
+					batchProbe.receiveMessage(Duration.ofSeconds(30));
+			reported[result._riddleNO] = true;
+			assertTrue(result._iterationCount >= 1 && result._iterationCount <= 3);
+			if(result._riddleNO != 1)
+			{
+				assertTrue(result._isSolved);
+				assertEquals(sudokuSolution, result._solution);
+			}
+		}
+		assertArrayEquals(new boolean[]{true, true, true}, reported);
+
+		SudokuSupervisor.BatchFinishedMsg summary =
+				(SudokuSupervisor.BatchFinishedMsg) batchProbe.receiveMessage(Duration.ofSeconds(5));
+		assertEquals(3, summary._riddleCount);
+		assertTrue(summary._solvedCount >= 2);
+		// Riddles are pre-solved as copies, the sender's ones stay intact
+		assertEquals(createSudokuFromNaturalBoard(rank, naturalBoard), riddles.get(0));
+		assertEquals(16, riddles.get(1).getEmptyFieldsCount());
+	}
+
+	@Test
+	public void test_14_SolvingSudokuWithTableShards()
+	{
+		int NO = 14;
+		int rank = 2;
+		int[][] naturalBoard = {
+				{0,2,3,4},
+				{3,4,0,2},
+				{2,0,4,3},
+				{4,3,2,0}
+		};
+		int[][] naturalSolution = {
+				{1,2,3,4},
+				{3,4,1,2},
+				{2,1,4,3},
+				{4,3,2,1}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(rank, naturalBoard);
+		Sudoku sudokuSolution = createSudokuFromNaturalBoard(rank, naturalSolution);
+
+		for(Teacher.TableGrouping grouping : new Teacher.TableGrouping[]{
+				Teacher.TableGrouping.ROW, Teacher.TableGrouping.BLOCK})
+		{
+			TestProbe<SudokuSupervisor.Protocol> dummyGuardian = testKit.createTestProbe();
+			testKit.spawn(Teacher.create(new Teacher.CreateMsg(
+					"teacher-" + NO, sudoku, dummyGuardian.getRef(), Teacher.Settings.DEFAULT.withTableGrouping(grouping))),
+					"test-" + NO + "-" + grouping);
+
+			SudokuSupervisor.IterationFinishedMsg results =
+					(SudokuSupervisor.IterationFinishedMsg) dummyGuardian.receiveMessage(Duration.ofSeconds(10));
+			results._newSolution.printNatural();
+			assertEquals(sudokuSolution, results._newSolution);
+		}
+	}
+}
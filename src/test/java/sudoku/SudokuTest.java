@@ -0,0 +1,274 @@
+package sudoku;
+
+import org.junit.Test;
+
+import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SudokuTest
+{
+	private Sudoku createSudokuFromNaturalBoard(int rank, int[][] naturalSudokuBoard)
+	{
+		Sudoku sudoku = new Sudoku(rank);
+		int[][] transformedSudokuBoard = new int[rank*rank][rank*rank];
+		for(int x = 0; x < rank*rank; ++x)
+			for(int y = 0; y < rank*rank; ++y)
+				transformedSudokuBoard[x][y] = naturalSudokuBoard[y][x];
+		sudoku.setBoard(transformedSudokuBoard);
+		return sudoku;
+	}
+
+	@Test
+	public void testFlatBoard()
+	{
+		int[][] naturalBoard = {
+				{1,0,0,0},
+				{0,0,3,0},
+				{0,0,0,0},
+				{0,2,0,0}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(2, naturalBoard);
+
+		// Field (x, y) is stored under the index y * size + x - the ID of its Table
+		assertEquals(3, sudoku.getDigit(2, 1));
+		assertEquals(3, sudoku.getDigit(6));
+		assertEquals(2, sudoku.getDigit(13));
+
+		// The board is returned as a copy, indexed [x][y]
+		int[][] board = sudoku.getBoard();
+		assertEquals(3, board[2][1]);
+		board[2][1] = 4;
+		assertEquals(3, sudoku.getDigit(2, 1));
+	}
+
+	@Test
+	public void testClues()
+	{
+		Sudoku sudoku = new Sudoku(3);
+		int[][] board = new int[9][9];
+		board[0][0] = 1;
+		board[7][8] = 2;		// index 79 - in the second word of the bitset
+		sudoku.setBoard(board);
+		assertTrue(sudoku.getMask(0, 0));
+		assertTrue(sudoku.getMask(7, 8));
+		assertFalse(sudoku.getMask(8, 7));
+
+		sudoku.insertClue(1, 7, 3);		// index 64 - the first bit of the second word
+		sudoku.insertDigit(2, 7, 4);
+		assertTrue(sudoku.getMask(1, 7));
+		assertFalse(sudoku.getMask(2, 7));
+
+		// Reset clears everything but clues
+		sudoku.reset();
+		assertEquals(3, sudoku.getDigit(1, 7));
+		assertEquals(0, sudoku.getDigit(2, 7));
+		assertEquals(81 - 3, sudoku.getEmptyFieldsCount());
+	}
+
+	@Test
+	public void testCopyAndEquality()
+	{
+		Sudoku sudoku = new Sudoku(2);
+		sudoku.insertClue(0, 0, 1);
+		sudoku.insertDigit(3, 3, 2);
+
+		Sudoku copy = new Sudoku(sudoku);
+		assertEquals(sudoku, copy);
+		assertEquals(sudoku.hashCode(), copy.hashCode());
+		assertTrue(copy.getMask(0, 0));
+		assertFalse(copy.isLegal(3, 0, 2));
+
+		// The copy is independent of the original
+		copy.insertDigit(3, 3, 0);
+		assertEquals(2, sudoku.getDigit(3, 3));
+		assertFalse(sudoku.equals(copy));
+		assertTrue(copy.isLegal(3, 0, 2));
+
+		// Equal digits make equal Sudokus, clues do not matter
+		Sudoku other = new Sudoku(2);
+		other.insertDigit(0, 0, 1);
+		assertEquals(copy, other);
+		assertEquals(copy.hashCode(), other.hashCode());
+		assertFalse(other.equals(new Sudoku(3)));
+	}
+
+	@Test
+	public void testLegalityQueries()
+	{
+		int[][] naturalBoard = {
+				{1,0,0,0},
+				{0,0,3,0},
+				{0,0,0,0},
+				{0,2,0,0}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(2, naturalBoard);
+
+		// Field (1, 0): 1 in its row and block, 2 in its column
+		assertFalse(sudoku.isLegal(1, 0, 1));
+		assertFalse(sudoku.isLegal(1, 0, 2));
+		assertTrue(sudoku.isLegal(1, 0, 3));
+		assertTrue(sudoku.isLegal(1, 0, 4));
+		assertArrayEquals(new long[]{0b1100L}, sudoku.candidates(1, 0));
+
+		// The field's own digit stays legal
+		assertTrue(sudoku.isLegal(0, 0, 1));
+		long[] candidates = new long[sudoku.getDigitWordCount()];
+		assertEquals(4, sudoku.candidates(0, 0, candidates));
+		assertArrayEquals(new long[]{0b1111L}, candidates);
+
+		// Occupancy follows inserted and removed digits
+		sudoku.insertDigit(1, 0, 3);
+		assertFalse(sudoku.isLegal(1, 2, 3));
+		sudoku.insertDigit(1, 0, 0);
+		assertTrue(sudoku.isLegal(1, 2, 3));
+		sudoku.insertDigit(1, 0, 4);
+		assertFalse(sudoku.isLegal(1, 2, 4));
+		sudoku.reset();
+		assertTrue(sudoku.isLegal(1, 2, 4));
+		assertFalse(sudoku.isLegal(3, 0, 1));
+	}
+
+	@Test(expected = Sudoku.DigitOutOfRangeException.class)
+	public void testLegalityOfEmptyDigit()
+	{
+		new Sudoku(2).isLegal(0, 0, 0);
+	}
+
+	@Test(expected = Sudoku.DigitOutOfRangeException.class)
+	public void testLegalityOfTooLargeDigit()
+	{
+		new Sudoku(2).isLegal(1, 0, 5);
+	}
+
+	@Test
+	public void testSolvedAndValid()
+	{
+		int[][] naturalSolution = {
+				{1,2,3,4},
+				{3,4,1,2},
+				{2,1,4,3},
+				{4,3,2,1}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(2, naturalSolution);
+		assertTrue(sudoku.isSolvedAndValid());
+
+		Sudoku copy = new Sudoku(sudoku);
+		copy.insertDigit(3, 3, 0);
+		assertFalse(copy.isSolvedAndValid());
+		assertTrue(sudoku.isSolvedAndValid());
+
+		// Swapping two digits of a row keeps rows full, but breaks columns and blocks
+		copy.insertDigit(3, 3, 1);
+		copy.insertDigit(0, 0, 2);
+		copy.insertDigit(1, 0, 1);
+		assertFalse(copy.isSolvedAndValid());
+		assertFalse(copy.isLegal(0, 0, 2));
+	}
+
+	@Test
+	public void testEmptyFieldsCountAndHash()
+	{
+		int[][] naturalBoard = {
+				{1,0,0,0},
+				{0,0,3,0},
+				{0,0,0,0},
+				{0,2,0,0}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(2, naturalBoard);
+		final long initialHash = sudoku.getBoardHash();
+		assertEquals(13, sudoku.getEmptyFieldsCount());
+
+		sudoku.insertDigit(3, 3, 4);
+		sudoku.insertDigit(2, 2, 4);
+		assertEquals(11, sudoku.getEmptyFieldsCount());
+		assertTrue(initialHash != sudoku.getBoardHash());
+
+		// The hash depends only on the digits, not on the order of modifications
+		Sudoku copy = new Sudoku(sudoku);
+		copy.insertDigit(2, 2, 0);
+		copy.insertDigit(3, 3, 0);
+		copy.insertDigit(3, 3, 4);
+		copy.insertDigit(2, 2, 4);
+		assertEquals(sudoku.getBoardHash(), copy.getBoardHash());
+		assertEquals(sudoku, copy);
+
+		sudoku.reset();
+		assertEquals(13, sudoku.getEmptyFieldsCount());
+		assertEquals(initialHash, sudoku.getBoardHash());
+	}
+
+	@Test
+	public void testPreSolving()
+	{
+		int[][] naturalBoard = {
+				{0,8,0,0,0,0,2,0,0},
+				{0,0,0,0,8,4,0,9,0},
+				{0,0,6,3,2,0,0,1,0},
+				{0,9,7,0,0,0,0,8,0},
+				{8,0,0,9,0,3,0,0,2},
+				{0,1,0,0,0,0,9,5,0},
+				{0,7,0,0,4,5,8,0,0},
+				{0,3,0,7,1,0,0,0,0},
+				{0,0,8,0,0,0,0,4,0}
+		};
+		int[][] naturalSolution = {
+				{7,8,4,1,9,6,2,3,5},
+				{3,2,1,5,8,4,6,9,7},
+				{9,5,6,3,2,7,4,1,8},
+				{2,9,7,4,5,1,3,8,6},
+				{8,4,5,9,6,3,1,7,2},
+				{6,1,3,8,7,2,9,5,4},
+				{1,7,9,6,4,5,8,2,3},
+				{4,3,2,7,1,8,5,6,9},
+				{5,6,8,2,3,9,7,4,1}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(3, naturalBoard);
+		Sudoku sudokuSolution = createSudokuFromNaturalBoard(3, naturalSolution);
+		final int emptyFieldsCount = sudoku.getEmptyFieldsCount();
+
+		final int eliminated = SudokuPreSolver.preSolve(sudoku);
+		sudoku.printNatural();
+
+		// This riddle is solvable by naked and hidden singles only
+		assertEquals(emptyFieldsCount, eliminated);
+		assertEquals(sudokuSolution, sudoku);
+		assertTrue(sudoku.isSolvedAndValid());
+		assertTrue(sudoku.getMask(0, 0));
+	}
+
+	@Test
+	public void testPreSolvingStopsOnMissingDigit()
+	{
+		int[][] naturalRiddle = {
+				{0,1,0,0},
+				{0,0,4,0},
+				{4,0,0,0},
+				{0,4,1,0}
+		};
+		Sudoku sudoku = createSudokuFromNaturalBoard(2, naturalRiddle);
+
+		// Every field has 2 candidates at least, but digit 1 fits no field of the first column
+		assertEquals(0, SudokuPreSolver.preSolve(sudoku));
+		// So the hidden single 1 of the third row is not filled any more
+		assertEquals(0, sudoku.getDigit(3, 2));
+	}
+
+	@Test
+	public void testPrintingLargeRank()
+	{
+		Sudoku sudoku = new Sudoku(4);
+		sudoku.insertClue(0, 0, 16);
+		sudoku.insertDigit(1, 0, 7);
+		sudoku.insertDigit(15, 15, 10);
+		final String[] lines = sudoku.toNaturalString().split(System.lineSeparator());
+
+		// Digits are aligned to two characters, every row has the same length as the horizontal lines
+		assertEquals(16 + 4 + 1, lines.length);
+		assertTrue(lines[1].startsWith("| 16  7  0  0 | "));
+		assertTrue(lines[19].endsWith(" 0 10 |"));
+		for(String line : lines)
+			assertEquals(lines[0].trim().length(), line.trim().length());
+	}
+}
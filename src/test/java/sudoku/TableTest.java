@@ -17,6 +17,15 @@ public class TableTest
 	@ClassRule
 	public static final TestKitJunitResource testKit = new TestKitJunitResource();
 
+	/** Receives the next message to the Teacher, skipping reports of progress, which Tables send once in a while. */
+	private static Teacher.Protocol receiveSkippingProgress(TestProbe<Teacher.Protocol> teacherDummy)
+	{
+		Teacher.Protocol msg = teacherDummy.receiveMessage();
+		while (msg instanceof Teacher.TableProgressMsg)
+			msg = teacherDummy.receiveMessage();
+		return msg;
+	}
+
 	@Test
 	public void testRegisteringPlayers()
 	{
@@ -71,11 +80,7 @@ public class TableTest
 		teacherDummy.receiveMessage();
 
 
-		// Start "new iteration"
-		theTable.tell(new Table.ResetMemoryMsg(teacherDummy.getRef()));
-		Teacher.TablePerformedMemoryResetMsg response0 =
-				(Teacher.TablePerformedMemoryResetMsg) teacherDummy.receiveMessage();
-		assertEquals(0, response0._id);
+		// Start "new iteration" - the Table resets lazily, on the first offer of the iteration #1
 
 
 		// Check Table's response for Player's offers
@@ -233,7 +238,7 @@ public class TableTest
 		Player.NegotiationsFinishedMsg responseFinish_3 =
 				(Player.NegotiationsFinishedMsg) playerDummy_3.receiveMessage();
 		Teacher.TableFinishedNegotiationsMsg responseFinish_4 =
-				(Teacher.TableFinishedNegotiationsMsg) teacherDummy.receiveMessage();
+				(Teacher.TableFinishedNegotiationsMsg) receiveSkippingProgress(teacherDummy);
 		assertEquals(3, responseFinish_1._resultingDigit);
 		assertEquals(3, responseFinish_2._resultingDigit);
 		assertEquals(3, responseFinish_3._resultingDigit);
@@ -265,11 +270,7 @@ public class TableTest
 		teacherDummy.receiveMessage();
 
 
-		// Start "new iteration"
-		theTable.tell(new Table.ResetMemoryMsg(teacherDummy.getRef()));
-		Teacher.TablePerformedMemoryResetMsg response0 =
-				(Teacher.TablePerformedMemoryResetMsg) teacherDummy.receiveMessage();
-		assertEquals(0, response0._id);
+		// Start "new iteration" - the Table resets lazily, on the first offer of the iteration #1
 
 
 		// Check Table's response for Player's offers
@@ -330,10 +331,81 @@ public class TableTest
 		Player.NegotiationsFinishedMsg response_2 = (Player.NegotiationsFinishedMsg) playerDummy_2.receiveMessage();
 		Player.NegotiationsFinishedMsg response_3 = (Player.NegotiationsFinishedMsg) playerDummy_3.receiveMessage();
 		Teacher.TableFinishedNegotiationsMsg response_4 =
-				(Teacher.TableFinishedNegotiationsMsg) teacherDummy.receiveMessage();
+				(Teacher.TableFinishedNegotiationsMsg) receiveSkippingProgress(teacherDummy);
 		assertEquals(0, response_1._resultingDigit);
 		assertEquals(0, response_2._resultingDigit);
 		assertEquals(0, response_3._resultingDigit);
 		assertEquals(0, response_4._digit);
 	}
+
+	@Test
+	public void testShardRouting()
+	{
+		TestProbe<Teacher.Protocol> teacherDummy = testKit.createTestProbe();
+		TestProbe<Player.Protocol> columnDummy_0 = testKit.createTestProbe();
+		TestProbe<Player.Protocol> columnDummy_1 = testKit.createTestProbe();
+		TestProbe<Player.Protocol> rowDummy = testKit.createTestProbe();
+		TestProbe<Player.Protocol> blockDummy = testKit.createTestProbe();
+
+		// Shard hosting two Tables of the first row of Sudoku 4x4
+		ActorRef<Table.Protocol> theShard = testKit.spawn(
+				TableShard.create(new TableShard.CreateMsg(
+						0, new int[]{0, 1}, new Position[]{new Position(0, 0), new Position(1, 0)},
+						4, teacherDummy.getRef())), "theShard");
+
+		theShard.tell(new Table.RegisterPlayerMsg(columnDummy_0.getRef(), 0, teacherDummy.getRef(), 0));
+		theShard.tell(new Table.RegisterPlayerMsg(rowDummy.getRef(), 4, teacherDummy.getRef(), 0));
+		theShard.tell(new Table.RegisterPlayerMsg(blockDummy.getRef(), 8, teacherDummy.getRef(), 0));
+		theShard.tell(new Table.RegisterPlayerMsg(columnDummy_1.getRef(), 1, teacherDummy.getRef(), 1));
+		theShard.tell(new Table.RegisterPlayerMsg(rowDummy.getRef(), 4, teacherDummy.getRef(), 1));
+		theShard.tell(new Table.RegisterPlayerMsg(blockDummy.getRef(), 8, teacherDummy.getRef(), 1));
+		for(int i = 0; i < 6; ++i)
+			assertTrue(((Teacher.RegisteredPlayerMsg) teacherDummy.receiveMessage())._isItDone);
+
+		teacherDummy.expectNoMessage();
+
+		// Messages are routed by tableId - only the Table #1 finishes negotiations
+		theShard.tell(new Table.OfferMsg(0, 0L, columnDummy_1.getRef(), 1, 1, 1));
+		Player.NegotiationsFinishedMsg finished = (Player.NegotiationsFinishedMsg) columnDummy_1.receiveMessage();
+		assertEquals(1, finished._tableId);
+		assertEquals(1, ((Player.NegotiationsFinishedMsg) rowDummy.receiveMessage())._tableId);
+		assertEquals(1, ((Player.NegotiationsFinishedMsg) blockDummy.receiveMessage())._tableId);
+		Teacher.TableFinishedNegotiationsMsg teacherResponse =
+				(Teacher.TableFinishedNegotiationsMsg) receiveSkippingProgress(teacherDummy);
+		assertEquals(1, teacherResponse._tableId);
+		assertEquals(1, teacherResponse._position.x);
+		columnDummy_0.expectNoMessage();
+	}
+
+	@Test
+	public void testLazyResetOnNewIteration()
+	{
+		TestProbe<Teacher.Protocol> teacherDummy = testKit.createTestProbe();
+		TestProbe<Player.Protocol> playerDummy_1 = testKit.createTestProbe();
+		TestProbe<Player.Protocol> playerDummy_2 = testKit.createTestProbe();
+		TestProbe<Player.Protocol> playerDummy_3 = testKit.createTestProbe();
+
+		ActorRef<Table.Protocol> theTable = testKit.spawn(
+				Table.create(new Table.CreateMsg(
+						0, new Position(0,0), 9, teacherDummy.getRef())),"theTable3");
+		theTable.tell(new Table.RegisterPlayerMsg(playerDummy_1.getRef(), 0, teacherDummy.getRef()));
+		theTable.tell(new Table.RegisterPlayerMsg(playerDummy_2.getRef(), 9, teacherDummy.getRef()));
+		theTable.tell(new Table.RegisterPlayerMsg(playerDummy_3.getRef(), 18, teacherDummy.getRef()));
+		for(int i = 0; i < 3; ++i)
+			teacherDummy.receiveMessage();
+
+		// No ResetMemoryMsg - the first offer of the iteration #1 resets the Table
+		theTable.tell(new Table.OfferMsg(0, 0L, playerDummy_1.getRef(), 0, 1));
+		assertEquals(1, ((Player.NegotiationsFinishedMsg) playerDummy_1.receiveMessage())._iterationId);
+		playerDummy_2.receiveMessage();
+		playerDummy_3.receiveMessage();
+		assertEquals(1, ((Teacher.TableFinishedNegotiationsMsg) receiveSkippingProgress(teacherDummy))._iterationId);
+
+		// Late offer of the iteration #1 is ignored, while an offer of the iteration #2 starts new negotiations
+		theTable.tell(new Table.OfferMsg(0, 0L, playerDummy_2.getRef(), 9, 1));
+		playerDummy_1.expectNoMessage();
+		theTable.tell(new Table.OfferMsg(0, 0L, playerDummy_2.getRef(), 9, 2));
+		assertEquals(2, ((Player.NegotiationsFinishedMsg) playerDummy_1.receiveMessage())._iterationId);
+		assertEquals(2, ((Teacher.TableFinishedNegotiationsMsg) receiveSkippingProgress(teacherDummy))._iterationId);
+	}
 }
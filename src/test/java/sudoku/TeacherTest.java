@@ -3,10 +3,16 @@ package sudoku;
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.*;
+import akka.actor.typed.javadsl.Behaviors;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
 import static junit.framework.TestCase.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class TeacherTest
 {
@@ -68,4 +74,162 @@ public class TeacherTest
 
 		assertEquals(sudoku, inspectionResults);
 	}
+
+	@Test
+	public void testReturningPreSolvedSudoku()
+	{
+		TestProbe<SudokuSupervisor.Protocol> dummyGuardian = testKit.createTestProbe();
+
+		int rank = 2;
+		Sudoku sudoku = new Sudoku(rank);
+		int[][] naturalSudokuBoard = {
+				{0,2,3,4},
+				{3,4,0,2},
+				{2,0,4,3},
+				{4,3,2,0}
+		};
+		int[][] transformedSudokuBoard = new int[rank*rank][rank*rank];
+		for(int x = 0; x < rank*rank; ++x)
+			for(int y = 0; y < rank*rank; ++y)
+				transformedSudokuBoard[x][y] = naturalSudokuBoard[y][x];
+		sudoku.setBoard(transformedSudokuBoard);
+		assertEquals(4, SudokuPreSolver.preSolve(sudoku));
+
+		// No field is left for negotiations, so the Teacher should return the solution at once
+		testKit.spawn(Teacher.create(new Teacher.CreateMsg("teacher2", sudoku, dummyGuardian.getRef())), "test5");
+		SudokuSupervisor.IterationFinishedMsg results =
+				(SudokuSupervisor.IterationFinishedMsg) dummyGuardian.receiveMessage();
+		assertEquals(sudoku, results._newSolution);
+	}
+
+	@Test
+	public void testBroadcasting()
+	{
+		List<TestProbe<Player.Protocol>> probes = new ArrayList<>();
+		List<ActorRef<Player.Protocol>> recipients = new ArrayList<>();
+		for(int i = 0; i < 3; ++i)
+		{
+			probes.add(testKit.createTestProbe());
+			recipients.add(probes.get(i).getRef());
+		}
+		ActorRef<Player.Protocol> broadcaster = testKit.spawn(Broadcaster.create(recipients), "broadcaster");
+
+		Player.ConsentToStartIterationMsg consent = new Player.ConsentToStartIterationMsg(1, true);
+		broadcaster.tell(consent);
+		broadcaster.tell(new Player.WakeUpMsg());
+		for(TestProbe<Player.Protocol> probe : probes)
+		{
+			// Every recipient gets the very same messages, in the order they were broadcast
+			assertEquals(consent, probe.receiveMessage());
+			assertEquals(Player.WakeUpMsg.class, probe.receiveMessage().getClass());
+		}
+	}
+
+	@Test
+	public void testIterationTimeoutSettings()
+	{
+		TestProbe<SudokuSupervisor.Protocol> dummyGuardian = testKit.createTestProbe();
+		TestProbe<TimerManager.IterationTimeoutInfoMsg> monitor = testKit.createTestProbe();
+
+		Sudoku sudoku = new Sudoku(2);
+		sudoku.insertClue(0, 0, 1);
+		// The timeout stays initial until 32 iterations are measured
+		TimerManager.TimeoutSettings settings = new TimerManager.TimeoutSettings(32, 32, 0.95, 3.0, 200, 30000, 1234);
+		ActorRef<Teacher.Protocol> teacher = testKit.spawn(Teacher.create(new Teacher.CreateMsg(
+				"teacher3", sudoku, dummyGuardian.getRef(), Teacher.Settings.DEFAULT.withTimeoutSettings(settings))),
+				"test6");
+
+		teacher.tell(new Teacher.GetIterationTimeoutMsg(monitor.getRef()));
+		TimerManager.IterationTimeoutInfoMsg info = monitor.receiveMessage();
+		assertEquals(1234, info._timeoutMilliseconds);
+	}
+
+	@Test
+	public void testTablesNotResponding()
+	{
+		TestProbe<SudokuSupervisor.Protocol> dummyGuardian = testKit.createTestProbe();
+
+		Sudoku sudoku = new Sudoku(2);
+		sudoku.insertClue(0, 0, 1);
+		// Tables register their Players, but never finish - so only the liveness check may end the iteration
+		// The iteration timeout of 8 s makes the check wait 2 s
+		TimerManager.TimeoutSettings settings = new TimerManager.TimeoutSettings(32, 4, 0.95, 3.0, 200, 30000, 8000);
+		testKit.spawn(Teacher.create(new Teacher.CreateMsg(
+				"teacher4", sudoku, dummyGuardian.getRef(), Teacher.Settings.DEFAULT.withTimeoutSettings(settings)),
+				tableId -> Behaviors.receiveMessage(msg -> {
+					if (msg instanceof Table.RegisterPlayerMsg)
+					{
+						Table.RegisterPlayerMsg registerMsg = (Table.RegisterPlayerMsg) msg;
+						registerMsg._replyTo.tell(new Teacher.RegisteredPlayerMsg(registerMsg._playerId, true));
+					}
+					return Behaviors.same();
+				})),
+				"test7");
+
+		SudokuSupervisor.IterationFinishedMsg results = (SudokuSupervisor.IterationFinishedMsg)
+				dummyGuardian.receiveMessage(Duration.ofSeconds(7));		// before the iteration timeout
+		assertEquals(sudoku, results._newSolution);		// no Table inserted its digit
+	}
+
+	@Test
+	public void testTopology()
+	{
+		Topology topology = Topology.of(2);
+		assertTrue(topology == Topology.of(2));
+		assertEquals(12, topology.getPlayerCount());
+		assertEquals(16, topology.getTableCount());
+		assertEquals(8, topology.getPlayerId(5, 2));		// field (1,1) belongs to the first block
+		assertEquals(5, topology.getTableIds(8)[3]);
+		assertEquals(new Position(1, 1), topology.getPosition(5));
+	}
+
+	@Test
+	public void testEmptyFieldsRewardPolicy()
+	{
+		Topology topology = Topology.of(2);
+		Sudoku solution = new Sudoku(2);
+		solution.insertDigit(0, 0, 1);
+		solution.insertDigit(1, 1, 2);
+		float[] rewards = new float[topology.getPlayerCount()];
+		new EmptyFieldsRewardPolicy().computeRewards(solution, topology, rewards);
+
+		// The first block has 2 filled fields, the first column - only 1
+		assertEquals(0.25f, rewards[8] - rewards[0], 1e-6f);
+		assertEquals(rewards[0], rewards[5], 1e-6f);
+		// Total reward of all inputted digits is zero
+		final int[] filledCounts = {1, 1, 0, 0, 1, 1, 0, 0, 2, 0, 0, 0};
+		float rewardSum = 0;
+		for(int playerId = 0; playerId < rewards.length; ++playerId)
+			rewardSum += rewards[playerId] * filledCounts[playerId];
+		assertEquals(0f, rewardSum, 1e-6f);
+	}
+
+	@Test
+	public void testTeacherMemoryBookkeeping()
+	{
+		Sudoku sudoku = new Sudoku(2);
+		sudoku.insertClue(1, 0, 2);
+		sudoku.insertClue(3, 3, 1);
+		TeacherMemory memory = new TeacherMemory(sudoku.getTableCount(), sudoku);
+		assertEquals(14, memory.getTablesNotFinishedCount());
+
+		assertEquals(13, memory.addTableFinished(0));
+		assertEquals(11, memory.setTableIdsConsideredDead(new int[]{0, 2, 3}));	// Table #0 has already finished
+		assertEquals(11, memory.addTableFinished(2));		// late finish of a dead Table is ignored
+		final int[] tableIds = new int[sudoku.getTableCount()];
+		assertEquals(11, memory.getTablesNotFinished(tableIds));
+		assertEquals(4, tableIds[0]);
+		assertEquals(14, tableIds[10]);
+
+		// Table #5 reported progress, so only #4 is considered dead - #5 must progress again until the next check
+		memory.addTableProgressed(5);
+		assertEquals(10, memory.setTableIdsConsideredDead(new int[]{4, 5}));
+		assertEquals(9, memory.setTableIdsConsideredDead(new int[]{5}));
+
+		sudoku.insertDigit(0, 0, 1);
+		memory.setNormalTables(sudoku);
+		memory.reset();
+		assertEquals(13, memory.getTablesNotFinishedCount());
+		assertEquals(12, memory.addTableFinished(2));
+	}
 }
@@ -3,11 +3,14 @@ package sudoku;
 import akka.actor.testkit.typed.javadsl.TestKitJunitResource;
 import akka.actor.testkit.typed.javadsl.TestProbe;
 import akka.actor.typed.*;
+import com.typesafe.config.ConfigFactory;
 import org.junit.ClassRule;
 import org.junit.Test;
 
+import java.time.Duration;
 import java.util.Arrays;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 public class TimerManagerTest
@@ -43,4 +46,69 @@ public class TimerManagerTest
 		Teacher.TablesAreNotRespondingMsg response = (Teacher.TablesAreNotRespondingMsg) dummyTeacher.receiveMessage();
 		assertTrue(Arrays.equals(new int[]{0}, response._tableIds));
 	}
+
+	@Test
+	public void testIterationTimeout()
+	{
+		TestProbe<Teacher.Protocol> dummyTeacher = testKit.createTestProbe();
+
+		ActorRef<TimerManager.Protocol> theTimer = testKit.spawn(
+				TimerManager.create(new TimerManager.CreateMsg(dummyTeacher.getRef())), "timer-3");
+		theTimer.tell(new TimerManager.NewIterationStartedMsg(1000));
+		dummyTeacher.expectNoMessage();
+		theTimer.tell(new TimerManager.NewIterationStartedMsg(100));
+		Teacher.IterationTimeoutMsg response = (Teacher.IterationTimeoutMsg) dummyTeacher.receiveMessage();
+		assertEquals(2, response._iterationNO);
+		dummyTeacher.expectNoMessage(Duration.ofMillis(1500));
+	}
+
+	@Test
+	public void testAdaptiveIterationTimeout() throws InterruptedException
+	{
+		TestProbe<Teacher.Protocol> dummyTeacher = testKit.createTestProbe();
+		TestProbe<TimerManager.IterationTimeoutInfoMsg> monitor = testKit.createTestProbe();
+
+		ActorRef<TimerManager.Protocol> theTimer = testKit.spawn(
+				TimerManager.create(new TimerManager.CreateMsg(dummyTeacher.getRef(),
+						new TimerManager.TimeoutSettings(4, 2, 0.5, 2.0, 300, 400, 5000))), "timer-4");
+		theTimer.tell(new TimerManager.GetIterationTimeoutMsg(monitor.getRef()));
+		TimerManager.IterationTimeoutInfoMsg info = monitor.receiveMessage();
+		assertEquals(400, info._timeoutMilliseconds);		// initial timeout is clamped too
+		assertEquals(0, info._sampleCount);
+
+		// Short iterations make the timeout drop to its lower bound
+		for (int i = 0; i < 3; ++i)
+		{
+			theTimer.tell(new TimerManager.NewIterationStartedMsg());
+			Thread.sleep(10);
+		}
+		theTimer.tell(new TimerManager.GetIterationTimeoutMsg(monitor.getRef()));
+		info = monitor.receiveMessage();
+		assertEquals(300, info._timeoutMilliseconds);
+		assertEquals(2, info._sampleCount);
+
+		// Stuck iteration times out after the adaptive timeout
+		theTimer.tell(new TimerManager.NewIterationStartedMsg());
+		Teacher.IterationTimeoutMsg response = dummyTeacher.expectMessageClass(
+				Teacher.IterationTimeoutMsg.class, Duration.ofMillis(1000));
+		assertEquals(4, response._iterationNO);
+	}
+
+	@Test
+	public void testTimeoutSettingsFromConfig()
+	{
+		TimerManager.TimeoutSettings settings = TimerManager.TimeoutSettings.fromConfig(ConfigFactory.parseString(
+				"sudoku.iteration-timeout { window-size = 8, percentile = 0.5, max = 2s, initial = 500ms }"));
+		assertEquals(8, settings._windowSize);
+		assertEquals(0.5, settings._percentile, 0.0);
+		assertEquals(2000, settings._maxMilliseconds);
+		assertEquals(500, settings._initialMilliseconds);
+		// missing settings are the default ones
+		assertEquals(TimerManager.TimeoutSettings.DEFAULT._minSamples, settings._minSamples);
+		assertEquals(TimerManager.TimeoutSettings.DEFAULT._multiplier, settings._multiplier, 0.0);
+		assertEquals(TimerManager.TimeoutSettings.DEFAULT._minMilliseconds, settings._minMilliseconds);
+
+		assertEquals(TimerManager.TimeoutSettings.DEFAULT,
+				TimerManager.TimeoutSettings.fromConfig(ConfigFactory.empty()));
+	}
 }